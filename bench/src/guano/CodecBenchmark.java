@@ -0,0 +1,66 @@
+package guano;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of decoding, encoding, and deinterleaving one second of 4-channel audio in each sample format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final int CHANNELS = 4;
+    private static final int SAMPLE_RATE = 384000;
+
+    @Param({"pcm16", "pcm24", "pcm32", "float"})
+    public String encoding;
+
+    private SampleCodec codec;
+    private ByteBuffer bytes;
+    private float[] samples;
+    private float[][] planar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        WaveFormat format = encoding.equals("float") ? WaveFormat.ieeeFloat(CHANNELS, SAMPLE_RATE)
+                : WaveFormat.pcm(CHANNELS, SAMPLE_RATE, Integer.parseInt(encoding.substring(3)));
+        codec = SampleCodec.forFormat(format);
+        samples = new float[CHANNELS * SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) Math.sin(i * 0.001);
+        }
+        planar = new float[CHANNELS][SAMPLE_RATE];
+        bytes = ByteBuffer.allocate(samples.length * codec.getBytesPerSample());
+        codec.encode(samples, 0, samples.length, bytes);
+    }
+
+    @Benchmark
+    public float[] decode() {
+        bytes.clear();
+        codec.decode(bytes, samples, 0, samples.length);
+        return samples;
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        bytes.clear();
+        codec.encode(samples, 0, samples.length, bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public float[][] deinterleave() {
+        SampleCodec.deinterleave(samples, 0, SAMPLE_RATE, planar, 0);
+        return planar;
+    }
+
+}
@@ -0,0 +1,73 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+
+/**
+ * Generates the synthetic recordings and metadata blocks used by the benchmarks.
+ */
+public class Fixtures {
+
+    /**
+     * Generate pseudo-random audio data, so that nothing downstream can take shortcuts on silence.
+     * @param sampleRate samplerate in Hz
+     * @param seconds length of the recording
+     */
+    public static short[] audio(int sampleRate, int seconds) {
+        short[] samples = new short[sampleRate * seconds];
+        Random random = new Random(42);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        return samples;
+    }
+
+    /**
+     * Populate a writer with a realistic set of metadata fields.
+     * @param customFields number of additional namespaced fields, to simulate verbose recorders
+     */
+    public static void metadata(GuanoWaveWriter writer, int sampleRate, int seconds, int customFields) {
+        writer.setString(GuanoField.TIMESTAMP, OffsetDateTime.now().toString());
+        writer.setFloat(GuanoField.LENGTH, seconds);
+        writer.setInt(GuanoField.SAMPLERATE, sampleRate);
+        writer.setString(GuanoField.MAKE, "Myotisoft");
+        writer.setString(GuanoField.MODEL, "Benchmark");
+        writer.setString(GuanoField.LOC_POSITION, "42.4 -71.1");
+        writer.setString(GuanoField.SPECIES_AUTO_ID, "MYLU");
+        writer.setString(GuanoField.NOTE, "Synthetic recording generated for benchmarking.");
+        for (int i = 0; i < customFields; i++) {
+            writer.setFloat("BNCH", "Field " + i, i * 1.5f);
+        }
+    }
+
+    /**
+     * Write a recording to a temporary file, which is deleted on exit.
+     */
+    public static File recording(int sampleRate, int seconds, int customFields) throws IOException {
+        File file = Files.createTempFile("guano-bench-", ".wav").toFile();
+        file.deleteOnExit();
+        GuanoWaveWriter writer = new GuanoWaveWriter(file);
+        writer.setAudioData(sampleRate, audio(sampleRate, seconds));
+        metadata(writer, sampleRate, seconds, customFields);
+        writer.write();
+        return file;
+    }
+
+    /**
+     * Render the contents of a <code>guan</code> chunk.
+     * @param customFields number of additional namespaced fields
+     */
+    public static byte[] guanChunk(int customFields) throws IOException {
+        File file = recording(1000, 1, customFields);
+        try {
+            return new WaveReader(file, WaveReader.METADATA_CHUNK_IDS).getChunk(GuanoReader.GUANO_CHUNK_ID);
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package guano;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of parsing <code>guan</code> chunks of various sizes, independent of file I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** Number of namespaced fields in addition to the typical top-level fields */
+    @Param({"0", "200"})
+    public int customFields;
+
+    private byte[] guanChunk;
+
+    private static final byte[] TIMESTAMP = GuanoParser.encode(GuanoField.TIMESTAMP.getName());
+    private static final byte[] SPECIES_AUTO_ID = GuanoParser.encode(GuanoField.SPECIES_AUTO_ID.getName());
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        guanChunk = Fixtures.guanChunk(customFields);
+    }
+
+    @Benchmark
+    public GuanoReader parse() throws IOException {
+        return new GuanoReader(guanChunk);
+    }
+
+    /** Extract just two fields with the visitor, as a corpus scan would */
+    @Benchmark
+    public String[] visitTwoFields() {
+        final String[] values = new String[2];
+        GuanoParser.parse(guanChunk, (data, nsStart, nsEnd, fieldStart, fieldEnd, valueStart, valueEnd) -> {
+            if (nsStart != nsEnd) return true;
+            if (GuanoParser.equals(data, fieldStart, fieldEnd, TIMESTAMP)) {
+                values[0] = GuanoParser.decode(data, valueStart, valueEnd);
+            } else if (GuanoParser.equals(data, fieldStart, fieldEnd, SPECIES_AUTO_ID)) {
+                values[1] = GuanoParser.decode(data, valueStart, valueEnd);
+            }
+            return values[0] == null || values[1] == null;
+        });
+        return values;
+    }
+
+}
@@ -0,0 +1,54 @@
+package guano;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of opening and reading whole recordings of realistic sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"250000", "384000", "500000"})
+    public int sampleRate;
+
+    @Param({"1", "10", "60"})
+    public int seconds;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Fixtures.recording(sampleRate, seconds, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public WaveReader waveReader() throws IOException {
+        return new WaveReader(file);
+    }
+
+    @Benchmark
+    public WaveReader waveReaderMetadataOnly() throws IOException {
+        return new WaveReader(file, WaveReader.METADATA_CHUNK_IDS);
+    }
+
+    @Benchmark
+    public GuanoReader guanoReader() throws IOException {
+        return new GuanoReader(file);
+    }
+
+}
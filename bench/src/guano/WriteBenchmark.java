@@ -0,0 +1,82 @@
+package guano;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of encoding and writing recordings of realistic sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"250000", "384000", "500000"})
+    public int sampleRate;
+
+    @Param({"1", "10", "60"})
+    public int seconds;
+
+    private short[] audio;
+    private File file;
+    private GuanoBatchWriter batchWriter;
+
+    /** Discards everything written to it, so that only encoding cost is measured */
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        audio = Fixtures.audio(sampleRate, seconds);
+        file = Files.createTempFile("guano-bench-", ".wav").toFile();
+        file.deleteOnExit();
+        batchWriter = new GuanoBatchWriter(sampleRate, audio.length);
+        batchWriter.setString(GuanoField.MAKE, "Myotisoft");
+        batchWriter.setInt(GuanoField.SAMPLERATE, sampleRate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /** Returns the stream, whose encoding buffer then escapes, so that the encoding can't be eliminated as dead code */
+    @Benchmark
+    public WaveDataOutputStream writeWavBytes() throws IOException {
+        WaveDataOutputStream out = new WaveDataOutputStream(NULL_OUTPUT);
+        out.writeWavBytes(audio);
+        return out;
+    }
+
+    @Benchmark
+    public void guanoWaveWriter() throws IOException {
+        GuanoWaveWriter writer = new GuanoWaveWriter(file);
+        writer.setAudioData(sampleRate, audio);
+        Fixtures.metadata(writer, sampleRate, seconds, 0);
+        writer.write();
+    }
+
+    @Benchmark
+    public void guanoBatchWriter() throws IOException {
+        batchWriter.setString(GuanoField.TIMESTAMP, OffsetDateTime.now().toString());
+        batchWriter.write(file, audio);
+    }
+
+}
@@ -0,0 +1,265 @@
+package guano;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Non-blocking GUANO metadata reader, for high-latency storage such as network filesystems.
+ *
+ * Each call to <code>read()</code> returns immediately with a <code>CompletableFuture</code>.
+ * The RIFF chunk header walk and the <code>guan</code> chunk read are performed with
+ * <code>AsynchronousFileChannel</code>, and each step is issued from the completion of the
+ * previous one, so many files may be in flight at once on a small thread pool rather than
+ * tying up a thread per file. The number of files open at once is bounded; reads beyond
+ * that bound are queued. See the example <code>main()</code> function below for API usage example.
+ */
+public class AsyncGuanoReader implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    private final ExecutorService executor;
+    private final Semaphore openFiles;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Create an asynchronous reader with a small thread pool.
+     */
+    public AsyncGuanoReader() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors()), DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * Create an asynchronous reader.
+     * @param threads number of threads which service I/O completions
+     * @param maxOpenFiles maximum number of files read concurrently
+     */
+    public AsyncGuanoReader(int threads, int maxOpenFiles) {
+        if (threads < 1 || maxOpenFiles < 1) throw new IllegalArgumentException("threads and maxOpenFiles must be positive");
+        this.openFiles = new Semaphore(maxOpenFiles);
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "guano-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Read a file's GUANO metadata asynchronously.
+     * @param path
+     * @return a future which completes with the parsed metadata, which is empty if the file
+     *         has no <code>guan</code> chunk
+     */
+    public CompletableFuture<GuanoReader> read(Path path) {
+        return readChunk(path, GuanoReader.GUANO_CHUNK_ID)
+                .thenApply(guanChunk -> guanChunk != null ? new GuanoReader(guanChunk) : new GuanoReader());
+    }
+
+    /**
+     * Read a single chunk of a file asynchronously, eg. <code>fmt_</code>. Like <code>WaveReader</code>,
+     * every chunk header is walked, and if the chunk occurs more than once the last is returned.
+     * @param path
+     * @param chunkId
+     * @return a future which completes with the chunk's data, or <code>null</code> if the chunk is absent
+     */
+    public CompletableFuture<byte[]> readChunk(final Path path, final String chunkId) {
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            AsynchronousFileChannel channel;
+            try {
+                channel = AsynchronousFileChannel.open(path, Collections.singleton(StandardOpenOption.READ), executor);
+            } catch (IOException | RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            new ChunkWalk(channel, chunkId).start().whenComplete((data, error) -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing left to read, so nothing to lose
+                }
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    result.complete(data);
+                }
+            });
+        };
+
+        pending.add(task);
+        drain();
+        return result;
+    }
+
+    /** A file has been closed, so start the next queued read, if any */
+    private void release() {
+        openFiles.release();
+        drain();
+    }
+
+    /** Start as many queued reads as the open file limit allows */
+    private void drain() {
+        while (!pending.isEmpty() && openFiles.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                openFiles.release();
+                return;
+            }
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * The state of a single file's chunk walk, which advances one asynchronous read at a time. Each step
+     * runs on the completion of the previous one, so the state is never accessed concurrently.
+     */
+    private static class ChunkWalk {
+        private final AsynchronousFileChannel channel;
+        private final String chunkId;
+        private final long start = System.nanoTime();
+        private long dataNanos = 0;
+        private long length;
+        private boolean rf64;
+        private Map<String, Long> ds64Sizes = Collections.emptyMap();
+        private int chunks = 0;
+        private long bytesRead = 12, bytesSkipped = 0;
+        private byte[] found = null;  // the last matching chunk so far
+
+        ChunkWalk(AsynchronousFileChannel channel, String chunkId) {
+            this.channel = channel;
+            this.chunkId = chunkId;
+        }
+
+        /** Validate the RIFF header, then walk all the chunk headers, keeping the last matching chunk */
+        CompletableFuture<byte[]> start() {
+            try {
+                length = channel.size();
+            } catch (IOException e) {
+                return failed(e);
+            }
+            return readFully(channel, ByteBuffer.allocate(12), 0).thenCompose(header -> {
+                try {
+                    if (header.hasRemaining()) throw new IOException("RIFF chunk identifier not found");
+                    rf64 = WaveReader.parseRiffHeader(header);
+                } catch (IOException e) {
+                    return failed(e);
+                }
+                return next(12);
+            });
+        }
+
+        /** Read the chunk header at the specified offset, read its data if needed, then move on to the next */
+        private CompletableFuture<byte[]> next(final long offset) {
+            if (offset + 8 > length) return finish();
+            return readFully(channel, ByteBuffer.allocate(8), offset).thenCompose(buf -> {
+                if (buf.hasRemaining()) return finish();
+                bytesRead += 8;
+                final WaveReader.ChunkHeader header = WaveReader.parseChunkHeader(buf, offset, ds64Sizes);
+                if (header.dataOffset() + header.size > length) return finish();  // truncated chunk
+                chunks++;
+
+                boolean ds64 = rf64 && header.id.equals(WaveReader.DS64_CHUNK_ID);
+                if (!header.id.equals(chunkId) && !ds64) {
+                    bytesSkipped += header.size;
+                    return next(header.end());
+                }
+                if (header.size > Integer.MAX_VALUE - 8) return failed(new IOException("Chunk too large to load: " + header.id));
+                final long dataStart = System.nanoTime();
+                return readFully(channel, ByteBuffer.allocate((int) header.size), header.dataOffset()).thenCompose(data -> {
+                    dataNanos += System.nanoTime() - dataStart;
+                    if (data.hasRemaining()) return finish();
+                    bytesRead += header.size;
+                    if (ds64) {
+                        try {
+                            ds64Sizes = WaveReader.parseDs64(data.array());
+                        } catch (IOException e) {
+                            return failed(e);
+                        }
+                    }
+                    if (header.id.equals(chunkId)) found = data.array();
+                    return next(header.end());
+                });
+            });
+        }
+
+        /** Record the walk, like a <code>WaveReader</code>'s, and complete with the last matching chunk */
+        private CompletableFuture<byte[]> finish() {
+            GuanoMetrics.recordRead(chunks, bytesRead, bytesSkipped, System.nanoTime() - start - dataNanos, dataNanos);
+            return CompletableFuture.completedFuture(found);
+        }
+    }
+
+    /**
+     * Fill a buffer from the specified position, issuing further reads from each completion
+     * as needed. At end of file, completes with the buffer partially filled.
+     */
+    private static CompletableFuture<ByteBuffer> readFully(final AsynchronousFileChannel channel,
+                                                           final ByteBuffer buf, final long position) {
+        final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        channel.read(buf, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer n, Long pos) {
+                if (n < 0 || !buf.hasRemaining()) {
+                    result.complete(buf);
+                } else {
+                    channel.read(buf, pos + n, pos + n, this);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Long pos) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    /**
+     * Stop all I/O threads. Any reads still in progress are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** Example main function which reads the `Timestamp` of many files concurrently */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.AsyncGuanoReader WAVFILE...");
+            System.exit(2);
+        }
+
+        try (AsyncGuanoReader reader = new AsyncGuanoReader()) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (final String filename : args) {
+                futures.add(reader.read(Paths.get(filename)).handle((guano, error) -> {
+                    if (error != null) {
+                        System.err.println(String.format("%s\t%s", filename, error));
+                    } else {
+                        System.out.println(String.format("%s\t%s", filename, guano.getString(GuanoField.TIMESTAMP)));
+                    }
+                    return null;
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+    }
+
+}
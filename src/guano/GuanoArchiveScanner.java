@@ -0,0 +1,453 @@
+package guano;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Reads GUANO metadata directly from the .WAV files within ZIP and TAR archives, without extracting them.
+ *
+ * Each entry is read through a channel onto its bytes within the archive, so <code>WaveReader</code>
+ * walks its chunks just as it would a file's, loading only the requested chunks and skipping the rest:
+ * <ul>
+ *     <li>ZIP: a stored (uncompressed) entry skips its <code>data</code> chunk without reading it, while a
+ *         compressed entry is inflated through a small buffer and discarded. Entries are read concurrently.</li>
+ *     <li>TAR: every entry is stored, so its chunks are read directly with positional reads at their
+ *         offsets within the archive. Entries are read concurrently.</li>
+ *     <li>Compressed TAR (<code>.tar.gz</code>, <code>.tgz</code>): the archive can only be read from front
+ *         to back, so entries are read one at a time, streaming past each <code>data</code> chunk.</li>
+ * </ul>
+ * No entry is ever held in memory or written to disk. Entries are reported under the archive's path
+ * resolved against their name, eg. <code>/data/2016.zip/night1/x.wav</code>; an entry whose name would
+ * escape the archive's path, eg. <code>../../x.wav</code>, is reported as a failure instead of being read.
+ * See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoArchiveScanner {
+
+    /** Largest TAR metadata entry (GNU long name or pax extended header) we're willing to load */
+    private static final int MAX_TAR_METADATA = 1024 * 1024;
+
+    /**
+     * A unit of work performed on each archive entry.
+     * @param <T> the result type
+     */
+    public interface EntryTask<T> {
+        /**
+         * @param entry the archive's path resolved against the entry's name
+         * @param reader the entry's chunks, as loaded by the scanner
+         */
+        T process(Path entry, WaveReader reader) throws Exception;
+    }
+
+    private final GuanoScanner scanner;
+    private final Collection<String> chunkIds;
+
+    /**
+     * Create an archive scanner which loads each entry's <code>fmt_</code> and <code>guan</code> chunks.
+     * @param scanner used to read entries concurrently, where the archive type allows
+     */
+    public GuanoArchiveScanner(GuanoScanner scanner) {
+        this(scanner, WaveReader.METADATA_CHUNK_IDS);
+    }
+
+    /**
+     * Create an archive scanner.
+     * @param scanner used to read entries concurrently, where the archive type allows
+     * @param chunkIds names of the chunks to load from each entry
+     */
+    public GuanoArchiveScanner(GuanoScanner scanner, Collection<String> chunkIds) {
+        this.scanner = scanner;
+        this.chunkIds = chunkIds;
+    }
+
+    /**
+     * Parse the GUANO metadata of every .WAV file within an archive.
+     * @param archive a <code>.zip</code>, <code>.tar</code>, <code>.tar.gz</code>, or <code>.tgz</code> file
+     * @return a lazy stream of per-entry results, which must be closed when done
+     * @throws IOException
+     */
+    public Stream<GuanoScanner.Result<GuanoReader>> scan(Path archive) throws IOException {
+        return scan(archive, (entry, reader) -> new GuanoReader(reader));
+    }
+
+    /**
+     * Perform a task on every .WAV file within an archive.
+     * @param archive a <code>.zip</code>, <code>.tar</code>, <code>.tar.gz</code>, or <code>.tgz</code> file
+     * @param task the work to perform on each entry
+     * @return a lazy stream of per-entry results, which must be closed when done
+     * @throws IOException
+     */
+    public <T> Stream<GuanoScanner.Result<T>> scan(Path archive, EntryTask<T> task) throws IOException {
+        String name = archive.getFileName().toString().toLowerCase();
+        if (name.endsWith(".zip")) return scanZip(archive, task);
+        if (name.endsWith(".tar")) return scanTar(archive, task);
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) return scanCompressedTar(archive, task);
+        throw new IOException("Unsupported archive type: " + archive);
+    }
+
+    /** @return <code>true</code> if the file is an archive type which can be scanned */
+    public static boolean isArchive(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    private static boolean isWaveName(String name) {
+        return name.toLowerCase().endsWith(".wav");
+    }
+
+    /**
+     * Resolve an entry name against the archive path, as a listing entry: either the normalized path,
+     * or a failure if the name would escape the archive's path.
+     */
+    private static GuanoScanner.Result<Path> resolve(Path archive, String name) {
+        Path base = archive.normalize();
+        String relative = name;
+        while (relative.startsWith("/")) relative = relative.substring(1);
+        Path path = base.resolve(relative).normalize();
+        if (path.startsWith(base) && !path.equals(base)) return new GuanoScanner.Result<>(path, path, null);
+        return new GuanoScanner.Result<>(base.resolve(relative), null, new IOException("Entry name escapes the archive: " + name));
+    }
+
+    private <T> Stream<GuanoScanner.Result<T>> scanZip(final Path archive, final EntryTask<T> task) throws IOException {
+        final ZipFile zip = new ZipFile(archive.toFile());
+        final Map<Path, ZipEntry> pending = Collections.synchronizedMap(new IdentityHashMap<Path, ZipEntry>());
+        Iterator<GuanoScanner.Result<Path>> paths = zip.stream()
+                .filter(entry -> !entry.isDirectory() && isWaveName(entry.getName()))
+                .map(entry -> {
+                    GuanoScanner.Result<Path> resolved = resolve(archive, entry.getName());
+                    if (resolved.isSuccess()) pending.put(resolved.getPath(), entry);
+                    return resolved;
+                }).iterator();
+        return scanner.mapEntries(paths, path -> {
+            try (InputStream in = zip.getInputStream(pending.remove(path))) {
+                return task.process(path, new WaveReader(in, chunkIds));
+            }
+        }).onClose(() -> closeUnchecked(zip));
+    }
+
+    private <T> Stream<GuanoScanner.Result<T>> scanTar(final Path archive, final EntryTask<T> task) throws IOException {
+        final FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+        final Map<Path, TarEntry> pending = Collections.synchronizedMap(new IdentityHashMap<Path, TarEntry>());
+        final TarIterator entries = new TarIterator(channel);
+        Iterator<GuanoScanner.Result<Path>> paths = new Iterator<GuanoScanner.Result<Path>>() {
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            public GuanoScanner.Result<Path> next() {
+                TarEntry entry = entries.next();
+                GuanoScanner.Result<Path> resolved = resolve(archive, entry.name);
+                if (resolved.isSuccess()) pending.put(resolved.getPath(), entry);
+                return resolved;
+            }
+        };
+        return scanner.mapEntries(paths, path -> {
+            TarEntry entry = pending.remove(path);
+            return task.process(path, new WaveReader(new RegionChannel(channel, entry.offset, entry.size), chunkIds));
+        }).onClose(() -> closeUnchecked(channel));
+    }
+
+    private <T> Stream<GuanoScanner.Result<T>> scanCompressedTar(final Path archive, final EntryTask<T> task) throws IOException {
+        final InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(archive)), 64 * 1024);
+        final SeekableByteChannel channel = new InputStreamChannel(in);
+        final TarIterator entries = new TarIterator(channel);
+        Iterator<GuanoScanner.Result<T>> results = new Iterator<GuanoScanner.Result<T>>() {
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            public GuanoScanner.Result<T> next() {
+                final TarEntry entry = entries.next();  // each entry must be read before moving on to the next
+                GuanoScanner.Result<Path> resolved = resolve(archive, entry.name);
+                if (!resolved.isSuccess()) return new GuanoScanner.Result<>(resolved.getPath(), null, resolved.getError());
+                return GuanoScanner.process(resolved.getPath(), path ->
+                        task.process(path, new WaveReader(new RegionChannel(channel, entry.offset, entry.size), chunkIds)));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL | Spliterator.ORDERED), false)
+                .onClose(() -> closeUnchecked(in));
+    }
+
+    /** Close a resource from a stream's close handler, which can't throw checked exceptions */
+    private static void closeUnchecked(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Location of a regular file's bytes within a TAR archive */
+    private static class TarEntry {
+        final String name;
+        final long offset;
+        final long size;
+
+        TarEntry(String name, long offset, long size) {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Walks the 512-byte headers of a TAR archive, yielding its regular .WAV file entries and seeking
+     * past everything else. Supports ustar name prefixes, GNU long names, and pax extended headers.
+     */
+    private static class TarIterator implements Iterator<TarEntry> {
+        private final SeekableByteChannel channel;
+        private final ByteBuffer block = ByteBuffer.allocate(512);
+        private long offset = 0;  // of the next header
+        private TarEntry next;
+        private boolean done;
+
+        TarIterator(SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    next = readNext();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public TarEntry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            TarEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        private TarEntry readNext() throws IOException {
+            String longName = null;
+            long longSize = -1;
+            while (true) {
+                channel.position(offset);
+                block.clear();
+                if (!WaveReader.readFully(channel, block)) return null;  // end of a truncated archive
+                byte[] header = block.array();
+                if (isZero(header)) return null;  // end-of-archive marker
+
+                char type = (char) header[156];
+                long size = parseNumber(header, 124, 12);
+                long dataOffset = offset + 512;
+                offset = dataOffset + (size + 511) / 512 * 512;
+
+                if (type == 'L' || type == 'x') {
+                    if (size > MAX_TAR_METADATA) throw new IOException("TAR metadata entry too large: " + size);
+                    ByteBuffer data = ByteBuffer.allocate((int) size);
+                    if (!WaveReader.readFully(channel, data)) return null;
+                    if (type == 'L') {
+                        longName = cString(data.array(), 0, data.capacity());
+                    } else {
+                        Map<String, String> pax = parsePax(data.array());
+                        if (pax.containsKey("path")) longName = pax.get("path");
+                        if (pax.containsKey("size")) longSize = Long.parseLong(pax.get("size"));
+                    }
+                    continue;
+                }
+
+                String name = longName != null ? longName : headerName(header);
+                if (longSize >= 0) {
+                    size = longSize;
+                    offset = dataOffset + (size + 511) / 512 * 512;
+                }
+                longName = null;
+                longSize = -1;
+                if ((type == '0' || type == '\0' || type == '7') && isWaveName(name)) {
+                    return new TarEntry(name, dataOffset, size);
+                }
+            }
+        }
+
+        private static boolean isZero(byte[] header) {
+            for (byte b : header) {
+                if (b != 0) return false;
+            }
+            return true;
+        }
+
+        /** Name, including any ustar prefix */
+        private static String headerName(byte[] header) {
+            String name = cString(header, 0, 100);
+            if (new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar")) {
+                String prefix = cString(header, 345, 155);
+                if (!prefix.isEmpty()) name = prefix + "/" + name;
+            }
+            return name;
+        }
+
+        private static String cString(byte[] bytes, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && bytes[end] != 0) end++;
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        /** Parse an octal number field, or a GNU base-256 number field for large sizes */
+        private static long parseNumber(byte[] header, int offset, int length) {
+            long value = 0;
+            if ((header[offset] & 0x80) != 0) {
+                value = header[offset] & 0x7F;
+                for (int i = offset + 1; i < offset + length; i++) {
+                    value = (value << 8) | (header[i] & 0xFF);
+                }
+                return value;
+            }
+            int i = offset;
+            while (i < offset + length && (header[i] == ' ' || header[i] == 0)) i++;
+            for (; i < offset + length && header[i] >= '0' && header[i] <= '7'; i++) {
+                value = (value << 3) | (header[i] - '0');
+            }
+            return value;
+        }
+
+        /** Parse pax extended header records of the form <code>"LENGTH KEY=VALUE\n"</code> */
+        private static Map<String, String> parsePax(byte[] data) {
+            Map<String, String> records = new HashMap<>();
+            int pos = 0;
+            while (pos < data.length) {
+                int space = pos;
+                while (space < data.length && data[space] != ' ') space++;
+                if (space >= data.length) break;
+                int length;
+                try {
+                    length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    break;
+                }
+                if (length <= 0 || pos + length > data.length) break;
+                String record = new String(data, space + 1, pos + length - space - 1, StandardCharsets.UTF_8);
+                int equals = record.indexOf('=');
+                if (equals > 0) {
+                    records.put(record.substring(0, equals), record.substring(equals + 1).replaceFirst("\n$", ""));
+                }
+                pos += length;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * A read-only view of a region of another channel. Reads from a <code>FileChannel</code> are positional,
+     * so any number of regions may be read concurrently; reads from any other channel reposition it.
+     */
+    private static class RegionChannel implements SeekableByteChannel {
+        private final SeekableByteChannel channel;
+        private final long offset;
+        private final long size;
+        private long position = 0;
+        private boolean open = true;
+
+        RegionChannel(SeekableByteChannel channel, long offset, long size) {
+            this.channel = channel;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            if (position >= size) return -1;
+            int limit = dst.limit();
+            dst.limit(dst.position() + (int) Math.min(dst.remaining(), size - position));
+            int n;
+            try {
+                if (channel instanceof FileChannel) {
+                    n = ((FileChannel) channel).read(dst, offset + position);
+                } else {
+                    n = channel.position(offset + position).read(dst);
+                }
+            } finally {
+                dst.limit(limit);
+            }
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;  // the underlying channel is shared, and stays open
+        }
+    }
+
+    /** Example main function which prints the number of namespaces found in each entry of an archive */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoArchiveScanner ARCHIVE");
+            System.exit(2);
+        }
+
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<GuanoScanner.Result<GuanoReader>> results = new GuanoArchiveScanner(scanner).scan(Paths.get(args[0]))) {
+            results.forEach(result -> {
+                if (result.isSuccess()) {
+                    System.out.println(String.format("%s\t%d namespaces", result.getPath(), result.getValue().getNamespaces().size()));
+                } else {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+
+/**
+ * Reusable writer for recorders which produce many short 16-bit mono .WAV files in quick succession.
+ *
+ * Unlike <code>GuanoWaveWriter</code>, a single instance is meant to write every file of a session.
+ * Samples are encoded in bulk into one pooled direct <code>ByteBuffer</code> through a little-endian
+ * <code>ShortBuffer</code> view, and the header, audio data, and <code>guan</code> chunk are then
+ * written with a single gathering <code>FileChannel</code> write, so the per-file cost is little more
+ * than a memory copy and a system call. The buffers grow to fit the longest file written, and are
+ * never reallocated after that.
+ *
+ * Metadata fields persist from one file to the next, so fixed fields such as <code>Make</code> need
+ * only be set once; per-file fields such as <code>Timestamp</code> are simply overwritten before each
+ * <code>write()</code>. The metadata block is rendered again only when a field has changed. See the
+ * example <code>main()</code> function below for API usage example.
+ *
+ * Instances are not thread-safe.
+ */
+public class GuanoBatchWriter {
+
+    /** Size of the RIFF, <code>fmt_</code>, and <code>data</code> headers preceding the audio data */
+    private static final int HEADER_SIZE = 12 + (8 + 16) + 8;
+
+    /** Most samples which fit in a single direct buffer */
+    private static final int MAX_SAMPLES = (Integer.MAX_VALUE - 8) / 2;
+
+    private final int sampleRate;  // Hz
+
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer audio;
+    private ByteBuffer metadata = ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] buffers = new ByteBuffer[3];
+
+    /** Stateful mapping of namespace to field key->value mapping */
+    private final Map<String, Map<String, String>> namespaceFields = new LinkedHashMap<>();
+    private boolean metadataDirty = true;
+
+    /**
+     * Create a batch writer.
+     * @param sampleRate audio samplerate in Hz of every file written
+     * @param initialSamples number of samples to size the audio buffer for, typically the longest expected file
+     */
+    public GuanoBatchWriter(int sampleRate, int initialSamples) {
+        if (sampleRate <= 0) throw new IllegalArgumentException("sampleRate must be positive");
+        this.sampleRate = sampleRate;
+        this.audio = ByteBuffer.allocateDirect(2 * Math.min(Math.max(initialSamples, 0), MAX_SAMPLES)).order(ByteOrder.LITTLE_ENDIAN);
+        namespaceFields.put("", new LinkedHashMap<String, String>());
+    }
+
+    /**
+     * Set a metadata field with String value, for this and all subsequent files.
+     * @param fieldname top-level fieldname, or pipe-delimited namespaced fieldname
+     * @param value
+     */
+    public void setString(String fieldname, String value) {
+        String ns = "";
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
+        }
+        setString(ns, fieldname, value);
+    }
+
+    /**
+     * Set a metadata field with String value, for this and all subsequent files.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setString(GuanoField field, String value) {
+        setString("", field.toString(), value);
+    }
+
+    /**
+     * Set a metadata field with String value, for this and all subsequent files.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     * @throws IllegalArgumentException if the value is <code>null</code>; use <code>remove()</code> to clear a field
+     */
+    public void setString(String namespace, String fieldname, String value) {
+        if (value == null) throw new IllegalArgumentException("null value for metadata field " + fieldname + ", use remove() instead");
+        Map<String, String> fields = namespaceFields.get(namespace);
+        if (fields == null) {
+            fields = new LinkedHashMap<>();
+            namespaceFields.put(namespace, fields);
+        }
+        if (!value.equals(fields.put(fieldname, value))) {
+            metadataDirty = true;
+        }
+    }
+
+    /**
+     * Set a metadata field with Integer value, for this and all subsequent files.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setInt(GuanoField field, int value) {
+        setString(field, Integer.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Integer value, for this and all subsequent files.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     */
+    public void setInt(String namespace, String fieldname, int value) {
+        setString(namespace, fieldname, Integer.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Float value, for this and all subsequent files.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setFloat(GuanoField field, float value) {
+        setString(field, Float.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Float value, for this and all subsequent files.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     */
+    public void setFloat(String namespace, String fieldname, float value) {
+        setString(namespace, fieldname, Float.toString(value));
+    }
+
+    /**
+     * Remove a metadata field, so that it is not written to subsequent files.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     */
+    public void remove(String namespace, String fieldname) {
+        Map<String, String> fields = namespaceFields.get(namespace);
+        if (fields != null && fields.remove(fieldname) != null) {
+            metadataDirty = true;
+        }
+    }
+
+    /**
+     * Write a complete 16-bit mono .WAV file with the current metadata.
+     * @param file
+     * @param samples
+     * @throws IOException
+     */
+    public void write(File file, short[] samples) throws IOException {
+        write(file.toPath(), samples, 0, samples.length);
+    }
+
+    /**
+     * Write a complete 16-bit mono .WAV file with the current metadata, replacing any existing file.
+     * @param path
+     * @param samples buffer holding the samples
+     * @param off offset of the first sample to write
+     * @param len number of samples to write
+     * @throws IOException
+     */
+    public void write(Path path, short[] samples, int off, int len) throws IOException {
+        if (!namespaceFields.get("").containsKey(GuanoField.TIMESTAMP.toString())) {
+            throw new IllegalArgumentException("Missing required metadata field " + GuanoField.TIMESTAMP);
+        }
+        long start = System.nanoTime();
+        if (metadataDirty) renderMetadata();
+        writeFile(path, samples, off, len, start);
+    }
+
+    /**
+     * Write a complete 16-bit mono .WAV file with metadata rendered from a precompiled template,
+     * replacing any existing file. Fields set on this writer are ignored.
+     * @param path
+     * @param samples buffer holding the samples
+     * @param off offset of the first sample to write
+     * @param len number of samples to write
+     * @param template
+     * @param values the file's value for each of the template's variable slots, in order
+     * @throws IllegalArgumentException if the template has no <code>Timestamp</code>, or its value is <code>null</code>
+     * @throws IOException
+     */
+    public void write(Path path, short[] samples, int off, int len, GuanoTemplate template, String... values) throws IOException {
+        if (!template.hasField(GuanoField.TIMESTAMP, values)) {
+            throw new IllegalArgumentException("Missing required metadata field " + GuanoField.TIMESTAMP);
+        }
+        long start = System.nanoTime();
+        int chunkSize = template.chunkSize(values);
+        if (metadata.capacity() < chunkSize) {
+            metadata = ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        metadata.clear();
+        template.render(metadata, values);
+        metadata.flip();
+        metadataDirty = true;  // the buffer no longer holds this writer's own fields
+        writeFile(path, samples, off, len, start);
+    }
+
+    /** Encode the samples, then write them between the header and the already-rendered metadata */
+    private void writeFile(Path path, short[] samples, int off, int len, long start) throws IOException {
+        if (len > MAX_SAMPLES) throw new IllegalArgumentException("Too many samples for a single batch write: " + len);
+        if (audio.capacity() < 2 * len) {
+            audio = ByteBuffer.allocateDirect(2 * len).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        audio.clear().limit(2 * len);
+        audio.asShortBuffer().put(samples, off, len);
+        metadata.rewind();
+
+        putHeader(2 * len, metadata.limit());
+        buffers[0] = header;
+        buffers[1] = audio;
+        buffers[2] = metadata;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = header.remaining() + audio.remaining() + metadata.remaining();
+            for (long remaining = size; remaining > 0; ) {
+                remaining -= channel.write(buffers);
+            }
+            GuanoMetrics.recordWrite(size, System.nanoTime() - start);
+        }
+    }
+
+    /** Encode the complete <code>guan</code> chunk, including its header and padding, into the pooled buffer */
+    private void renderMetadata() {
+        byte[] bytes = GuanoWaveWriter.renderMetadata(namespaceFields).getBytes(StandardCharsets.UTF_8);
+        int padded = bytes.length + (bytes.length % 2);  // pad for 16-bit alignment
+        if (metadata.capacity() < 8 + padded) {
+            metadata = ByteBuffer.allocateDirect(8 + padded).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        metadata.clear();
+        metadata.put(GuanoReader.GUANO_CHUNK_ID.getBytes(StandardCharsets.US_ASCII));
+        metadata.putInt(padded);
+        metadata.put(bytes);
+        if (padded > bytes.length) {
+            metadata.put((byte) '\n');
+        }
+        metadata.flip();
+        metadataDirty = false;
+    }
+
+    /** Fill in the RIFF, <code>fmt_</code>, and <code>data</code> headers for the current file */
+    private void putHeader(int audioDataSize, int metadataChunkSize) {
+        header.clear();
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) (HEADER_SIZE - 8L + audioDataSize + metadataChunkSize));
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16);  // fmt_ subchunk size
+        header.putShort((short) 1);  // PCM audio format
+        header.putShort((short) 1);  // channels
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2);  // byte rate
+        header.putShort((short) 2);  // block alignment
+        header.putShort((short) 16);  // samplewidth in bits
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(audioDataSize);
+        header.flip();
+    }
+
+    /** Example main function which writes a night's worth of short triggered recordings */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java guano.GuanoBatchWriter DIRECTORY COUNT");
+            System.exit(2);
+        }
+
+        int sampleRate = 384_000;
+        short[] trigger = new short[sampleRate * 3];  // pretend this is real audio data
+        GuanoBatchWriter writer = new GuanoBatchWriter(sampleRate, trigger.length);
+        writer.setString(GuanoField.MAKE, "Myotisoft");
+        writer.setInt(GuanoField.SAMPLERATE, sampleRate);
+        writer.setFloat(GuanoField.LENGTH, 3);
+
+        try {
+            int count = Integer.parseInt(args[1]);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                writer.setString(GuanoField.TIMESTAMP, OffsetDateTime.now().toString());
+                writer.write(Paths.get(args[0], String.format("trigger_%06d.wav", i)), trigger, 0, trigger.length);
+            }
+            System.out.println(String.format("wrote %d files in %.1f ms", count, (System.nanoTime() - start) / 1e6));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
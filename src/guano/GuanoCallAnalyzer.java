@@ -0,0 +1,382 @@
+package guano;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+
+/**
+ * Streaming call detector, which summarizes the echolocation calls in a recording and records the
+ * summary as GUANO metadata in a namespace of its own, eg. <code>Analysis|Calls</code>.
+ *
+ * The <code>data</code> chunk is read in blocks through <code>WaveSampleReader</code> and cut into
+ * overlapping Hann-windowed frames, each of which is transformed with an FFT. Every frequency bin has
+ * a noise floor, established over the first few frames and adapted during later frames without calls.
+ * A frame is part of a call when any bin above the minimum frequency rises above its noise floor by the
+ * threshold, and consecutive such frames form a single call, whose frequency range is the bins within the
+ * threshold of each frame's peak. Only a few frames' worth of state is held at once, so memory use does not depend
+ * on the recording's length. Frequencies and durations are real-world values, corrected for any
+ * time-expansion factor (<code>TE</code>). Multi-channel recordings are analyzed on their first channel.
+ *
+ * Each file is analyzed by a single thread; <code>annotateAll()</code> analyzes many files concurrently.
+ * Instances are immutable, and may be used from multiple threads concurrently.
+ * See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoCallAnalyzer {
+
+    public static final String DEFAULT_NAMESPACE = "Analysis";
+
+    /** Number of interleaved source samples read per block, rounded down to whole frames */
+    private static final int BLOCK_SAMPLES = 64 * 1024;
+
+    /** Fields written besides <code>Calls</code>, which are present only when there are calls */
+    private static final String[] STATS_FIELDS = {"Avg Duration", "Peak Freq", "Min Freq", "Max Freq"};
+
+    /** Weight of the existing noise floor each time it adapts to a frame without calls */
+    private static final double NOISE_DECAY = 0.98;
+
+    /** Number of initial frames averaged to establish the noise floor, during which no calls are detected */
+    private static final int WARMUP_FRAMES = 16;
+
+    /** Power added to every bin, so that silence doesn't make a zero noise floor */
+    private static final double POWER_EPSILON = 1e-6;
+
+    /**
+     * The summary of all calls detected in a single recording.
+     */
+    public static class Stats {
+        private final int calls;
+        private final double avgDuration, peakFrequency, minFrequency, maxFrequency;
+
+        Stats(int calls, double avgDuration, double peakFrequency, double minFrequency, double maxFrequency) {
+            this.calls = calls;
+            this.avgDuration = avgDuration;
+            this.peakFrequency = peakFrequency;
+            this.minFrequency = minFrequency;
+            this.maxFrequency = maxFrequency;
+        }
+
+        /** @return number of calls detected */
+        public int getCalls() {
+            return calls;
+        }
+
+        /** @return mean call duration in milliseconds, or <code>NaN</code> if there are no calls */
+        public double getAvgDuration() {
+            return avgDuration;
+        }
+
+        /** @return frequency of greatest energy across all calls in kHz, or <code>NaN</code> if there are no calls */
+        public double getPeakFrequency() {
+            return peakFrequency;
+        }
+
+        /** @return lowest frequency reached by any call in kHz, or <code>NaN</code> if there are no calls */
+        public double getMinFrequency() {
+            return minFrequency;
+        }
+
+        /** @return highest frequency reached by any call in kHz, or <code>NaN</code> if there are no calls */
+        public double getMaxFrequency() {
+            return maxFrequency;
+        }
+
+        /**
+         * Set these statistics as fields of a namespace, removing any left from a previous analysis
+         * which no longer apply. The edit takes effect when the editor is saved.
+         */
+        public void writeTo(GuanoEditor editor, String namespace) {
+            editor.setInt(namespace, "Calls", calls);
+            double[] values = values();
+            for (int i = 0; i < STATS_FIELDS.length; i++) {
+                if (calls > 0) {
+                    editor.setFloat(namespace, STATS_FIELDS[i], round(values[i]));
+                } else {
+                    editor.remove(namespace, STATS_FIELDS[i]);
+                }
+            }
+        }
+
+        /**
+         * Set these statistics as fields of a namespace of a file being written, removing any
+         * set earlier which no longer apply.
+         */
+        public void writeTo(GuanoWaveWriter writer, String namespace) {
+            writer.setInt(namespace, "Calls", calls);
+            double[] values = values();
+            for (int i = 0; i < STATS_FIELDS.length; i++) {
+                if (calls > 0) {
+                    writer.setFloat(namespace, STATS_FIELDS[i], round(values[i]));
+                } else {
+                    writer.remove(namespace, STATS_FIELDS[i]);
+                }
+            }
+        }
+
+        /** @return the values of <code>STATS_FIELDS</code>, in order */
+        private double[] values() {
+            return new double[] {avgDuration, peakFrequency, minFrequency, maxFrequency};
+        }
+
+        private static float round(double value) {
+            return (float) (Math.round(value * 100) / 100.0);
+        }
+
+        public String toString() {
+            return calls == 0 ? "0 calls" : String.format("%d calls, avg %.2f ms, peak %.2f kHz, %.2f-%.2f kHz",
+                    calls, avgDuration, peakFrequency, minFrequency, maxFrequency);
+        }
+    }
+
+    private final String namespace;
+    private final int fftSize;
+    private final double thresholdDb;
+    private final double minFrequency;
+
+    /** Hann window, and FFT twiddle factors and bit-reversal permutation, shared by all analyses */
+    private final float[] window, cos, sin;
+    private final int[] bitReverse;
+
+    /**
+     * Create an analyzer with a 512-point FFT and a 15dB detection threshold.
+     * @param namespace namespace to which statistics are written
+     */
+    public GuanoCallAnalyzer(String namespace) {
+        this(namespace, 512, 15.0, 0.0);
+    }
+
+    /**
+     * Create an analyzer.
+     * @param namespace namespace to which statistics are written
+     * @param fftSize number of samples per frame, a power of two; frames overlap by half
+     * @param thresholdDb how far above its noise floor a frequency must rise to be considered part of a call
+     * @param minFrequency real-world frequency in Hz below which energy is ignored, eg. 15000 to ignore insects and wind
+     */
+    public GuanoCallAnalyzer(String namespace, int fftSize, double thresholdDb, double minFrequency) {
+        if (fftSize < 16 || Integer.bitCount(fftSize) != 1) throw new IllegalArgumentException("fftSize must be a power of two, at least 16");
+        this.namespace = namespace;
+        this.fftSize = fftSize;
+        this.thresholdDb = thresholdDb;
+        this.minFrequency = minFrequency;
+
+        window = new float[fftSize];
+        cos = new float[fftSize / 2];
+        sin = new float[fftSize / 2];
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+        }
+        for (int i = 0; i < fftSize / 2; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / fftSize);
+            sin[i] = (float) -Math.sin(2 * Math.PI * i / fftSize);
+        }
+        bitReverse = new int[fftSize];
+        int bits = Integer.numberOfTrailingZeros(fftSize);
+        for (int i = 0; i < fftSize; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Detect and summarize the calls in a single file, without modifying it.
+     * @param path a .WAV file in any format supported by <code>SampleCodec</code>
+     * @return the call statistics
+     * @throws IOException
+     */
+    public Stats analyze(Path path) throws IOException {
+        double te = new GuanoReader(path.toFile()).getDouble(GuanoField.TE);
+        if (Double.isNaN(te) || te <= 0) te = 1;
+
+        try (WaveSampleReader reader = new WaveSampleReader(path)) {
+            WaveFormat format = reader.getFormat();
+            int channels = format.getChannels();
+            Detector detector = new Detector(format.getSampleRate(), te);
+            ShortBuffer block = ShortBuffer.allocate((BLOCK_SAMPLES / channels) * channels);
+            for (long frame = 0; frame < reader.getFrameCount(); ) {
+                block.clear();
+                int frames = reader.read(block, frame);
+                frame += frames;
+                for (int i = 0; i < frames; i++) {
+                    detector.add(block.get(i * channels));
+                }
+            }
+            return detector.finish();
+        }
+    }
+
+    /**
+     * Detect and summarize the calls in a single file, then write the statistics to its metadata in place.
+     * @param path a .WAV file in any format supported by <code>SampleCodec</code>
+     * @return the call statistics
+     * @throws IOException
+     */
+    public Stats annotate(Path path) throws IOException {
+        Stats stats = analyze(path);
+        try (GuanoEditor editor = new GuanoEditor(path)) {
+            stats.writeTo(editor, namespace);
+            editor.save();
+        }
+        return stats;
+    }
+
+    /**
+     * Analyze and annotate every .WAV file beneath a directory concurrently.
+     * @param root a directory to walk recursively, or a single file
+     * @param scanner used to analyze files concurrently
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<GuanoScanner.Result<Stats>> annotateAll(Path root, GuanoScanner scanner) throws IOException {
+        return scanner.scan(root, this::annotate);
+    }
+
+    /**
+     * The state of a single analysis: the current frame, the per-bin noise floor, and the running statistics.
+     */
+    private class Detector {
+        private final double binHz;  // real-world width of each FFT bin
+        private final double hopMs;  // real-world duration of each hop between frames
+        private final int firstBin;
+        private final float[] frame = new float[fftSize];
+        private final float[] re = new float[fftSize], im = new float[fftSize];
+        private final double[] power = new double[fftSize / 2 + 1];
+        private final double[] noise = new double[fftSize / 2 + 1];
+        private final double threshold = Math.pow(10, thresholdDb / 10);
+        private int filled = 0;
+        private int frames = 0;
+
+        private int callFrames = 0;  // frames in the call in progress
+        private int calls = 0;
+        private long totalCallFrames = 0;
+        private double peakPower = 0;
+        private int peakBin = -1, minBin = Integer.MAX_VALUE, maxBin = -1;
+
+        Detector(int sampleRate, double te) {
+            binHz = (double) sampleRate / fftSize * te;
+            hopMs = 1000.0 * (fftSize / 2) / sampleRate / te;
+            firstBin = Math.max(1, (int) Math.ceil(minFrequency / binHz));  // never DC
+        }
+
+        void add(short sample) {
+            frame[filled++] = sample;
+            if (filled == fftSize) {
+                analyzeFrame();
+                System.arraycopy(frame, fftSize / 2, frame, 0, fftSize / 2);  // frames overlap by half
+                filled = fftSize / 2;
+            }
+        }
+
+        private void analyzeFrame() {
+            for (int i = 0; i < fftSize; i++) {
+                re[bitReverse[i]] = frame[i] * window[i];
+            }
+            Arrays.fill(im, 0f);
+            fft();
+            for (int k = firstBin; k < power.length; k++) {
+                power[k] = (double) re[k] * re[k] + (double) im[k] * im[k] + POWER_EPSILON;
+            }
+            if (frames++ < WARMUP_FRAMES) {
+                for (int k = firstBin; k < power.length; k++) {
+                    noise[k] += (power[k] - noise[k]) / frames;  // running mean
+                }
+                return;
+            }
+
+            int framePeakBin = -1;
+            for (int k = firstBin; k < power.length; k++) {
+                if (power[k] > noise[k] * threshold && (framePeakBin < 0 || power[k] > power[framePeakBin])) {
+                    framePeakBin = k;
+                }
+            }
+            boolean call = framePeakBin >= 0;
+            if (call) {
+                if (power[framePeakBin] > peakPower) {
+                    peakPower = power[framePeakBin];
+                    peakBin = framePeakBin;
+                }
+                // a call's extent is where it's within the threshold of its peak, which excludes spectral leakage
+                double floor = power[framePeakBin] / threshold;
+                for (int k = firstBin; k < power.length; k++) {
+                    if (power[k] > noise[k] * threshold && power[k] >= floor) {
+                        minBin = Math.min(minBin, k);
+                        maxBin = Math.max(maxBin, k);
+                    }
+                }
+            }
+
+            if (call) {
+                callFrames++;
+            } else {
+                endCall();
+                for (int k = firstBin; k < power.length; k++) {
+                    noise[k] = NOISE_DECAY * noise[k] + (1 - NOISE_DECAY) * power[k];
+                }
+            }
+        }
+
+        private void endCall() {
+            if (callFrames > 0) {
+                calls++;
+                totalCallFrames += callFrames;
+                callFrames = 0;
+            }
+        }
+
+        /** In-place iterative radix-2 FFT of <code>re</code> and <code>im</code>, already in bit-reversed order */
+        private void fft() {
+            for (int size = 2; size <= fftSize; size <<= 1) {
+                int half = size >>> 1, step = fftSize / size;
+                for (int start = 0; start < fftSize; start += size) {
+                    for (int j = 0, t = 0; j < half; j++, t += step) {
+                        int a = start + j, b = a + half;
+                        float tre = re[b] * cos[t] - im[b] * sin[t];
+                        float tim = re[b] * sin[t] + im[b] * cos[t];
+                        re[b] = re[a] - tre;
+                        im[b] = im[a] - tim;
+                        re[a] += tre;
+                        im[a] += tim;
+                    }
+                }
+            }
+        }
+
+        Stats finish() {
+            if (filled > fftSize / 2) {  // zero-pad the final partial frame
+                Arrays.fill(frame, filled, fftSize, 0f);
+                analyzeFrame();
+            }
+            endCall();
+            if (calls == 0) return new Stats(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            // frames overlap by half, so a call of N frames spans N + 1 hops
+            return new Stats(calls, (totalCallFrames + calls) * hopMs / calls, peakBin * binHz / 1000,
+                             minBin * binHz / 1000, maxBin * binHz / 1000);
+        }
+    }
+
+    /** Example main function which analyzes and annotates a directory tree of recordings */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoCallAnalyzer DIRECTORY [MIN_FREQUENCY_HZ]");
+            System.exit(2);
+        }
+
+        GuanoCallAnalyzer analyzer = new GuanoCallAnalyzer(DEFAULT_NAMESPACE, 512, 15.0,
+                args.length > 1 ? Double.parseDouble(args[1]) : 0.0);
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<GuanoScanner.Result<Stats>> results = analyzer.annotateAll(Paths.get(args[0]), scanner)) {
+            results.forEach(result -> {
+                if (result.isSuccess()) {
+                    System.out.println(String.format("%s\t%s", result.getPath(), result.getValue()));
+                } else {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
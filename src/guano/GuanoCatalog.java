@@ -0,0 +1,308 @@
+package guano;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * A persistent, incrementally updated index of the GUANO metadata in a corpus of .WAV files.
+ *
+ * The catalog is stored in a single compact index file. Each entry is keyed by the file's path,
+ * and remembers the file's size and modification time, so that <code>update()</code> need only
+ * re-parse files which are new or have changed since the catalog was last saved. Files which
+ * fail to parse are remembered too, so that they aren't retried until they change. A directory
+ * which can't be listed doesn't stop an update; its existing entries are kept as they were.
+ * See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoCatalog {
+
+    private static final int MAGIC = 0x47434154;  // "GCAT"
+    private static final int VERSION = 1;
+
+    /**
+     * The catalogued state of a single file.
+     */
+    public static class Entry {
+        private final Path path;
+        private final long size;
+        private final long lastModified;  // millis
+        private final GuanoReader metadata;
+
+        Entry(Path path, long size, long lastModified, GuanoReader metadata) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /** @return the file's metadata, or <code>null</code> if it could not be parsed */
+        public GuanoReader getMetadata() {
+            return metadata;
+        }
+
+        /** @return <code>true</code> if the file on disk still has the catalogued size and modification time */
+        boolean matches(BasicFileAttributes attrs) {
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == lastModified;
+        }
+    }
+
+    private final Path indexFile;
+    private final Map<Path, Entry> entries = new HashMap<>();
+    private final Map<Path, IOException> unreadable = new HashMap<>();
+
+    /**
+     * Open a catalog, loading its index file if it exists.
+     * @param indexFile
+     * @throws IOException if the index file exists but cannot be read
+     */
+    public GuanoCatalog(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            load();
+        }
+    }
+
+    /**
+     * Bring the catalog up to date with a directory tree, parsing only new and changed files.
+     * Entries for files beneath the directory which no longer exist are removed, except beneath
+     * directories which couldn't be listed, which are skipped and reported by <code>getUnreadable()</code>.
+     * @param root directory to walk recursively
+     * @param scanner used to parse changed files concurrently
+     * @return number of files which were parsed
+     * @throws IOException
+     */
+    public int update(Path root, GuanoScanner scanner) throws IOException {
+        final Path base = root.toAbsolutePath().normalize();
+        final Set<Path> seen = new HashSet<>();
+        int parsed = 0;
+        unreadable.clear();
+
+        try (Stream<GuanoScanner.Result<Path>> listed = GuanoScanner.listEntries(base)) {
+            Iterator<Path> changed = listed
+                    .filter(entry -> {
+                        if (entry.isSuccess()) return true;
+                        unreadable.put(entry.getPath().toAbsolutePath().normalize(), (IOException) entry.getError());
+                        return false;
+                    })
+                    .map(entry -> entry.getPath().toAbsolutePath().normalize())
+                    .filter(path -> {
+                        seen.add(path);
+                        Entry entry = entries.get(path);
+                        try {
+                            return entry == null || !entry.matches(Files.readAttributes(path, BasicFileAttributes.class));
+                        } catch (IOException e) {
+                            return true;  // let the parse report it
+                        }
+                    })
+                    .iterator();
+
+            try (Stream<GuanoScanner.Result<Entry>> results = scanner.map(changed, GuanoCatalog::parse)) {
+                Iterator<GuanoScanner.Result<Entry>> it = results.iterator();
+                while (it.hasNext()) {
+                    GuanoScanner.Result<Entry> result = it.next();
+                    if (result.isSuccess()) {
+                        entries.put(result.getPath(), result.getValue());
+                    } else {
+                        entries.remove(result.getPath());  // vanished or unreadable; retry next time
+                    }
+                    parsed++;
+                }
+            }
+        }
+
+        entries.keySet().removeIf(path -> path.startsWith(base) && !seen.contains(path) && !isUnreadable(path));
+        return parsed;
+    }
+
+    /** @return <code>true</code> if the path is, or is beneath, one which couldn't be listed by the last update */
+    private boolean isUnreadable(Path path) {
+        for (Path dir : unreadable.keySet()) {
+            if (path.startsWith(dir)) return true;
+        }
+        return false;
+    }
+
+    /** @return the files and directories which couldn't be listed by the last <code>update()</code>, and why */
+    public Map<Path, IOException> getUnreadable() {
+        return Collections.unmodifiableMap(unreadable);
+    }
+
+    /** Parse a single file, capturing its size and modification time beforehand */
+    private static Entry parse(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        GuanoReader metadata;
+        try {
+            metadata = new GuanoReader(path.toFile());
+        } catch (IOException | RuntimeException e) {
+            metadata = null;  // not a valid GUANO file
+        }
+        return new Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis(), metadata);
+    }
+
+    /**
+     * Get the catalogued metadata for a file.
+     * @param path
+     * @return the metadata, or <code>null</code> if the file is not catalogued or could not be parsed
+     */
+    public GuanoReader get(Path path) {
+        Entry entry = entries.get(path.toAbsolutePath().normalize());
+        return entry != null ? entry.getMetadata() : null;
+    }
+
+    /** @return all catalogued entries */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Write the catalog to its index file. The index is replaced atomically, so a crash
+     * while saving leaves the previous index intact.
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                write(out);
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Serialize the catalog. Namespace and field names are written once to a string table
+     * and referenced by index, since they repeat across nearly every file.
+     */
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            if (entry.metadata == null) continue;
+            for (String ns : entry.metadata.getNamespaces()) {
+                intern(names, ns);
+                for (String field : entry.metadata.getFieldnames(ns)) {
+                    intern(names, field);
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(names.size());
+        for (String name : names.keySet()) {
+            writeString(out, name);
+        }
+
+        out.writeInt(entries.size());
+        for (Entry entry : entries.values()) {
+            writeString(out, entry.path.toString());
+            out.writeLong(entry.size);
+            out.writeLong(entry.lastModified);
+            if (entry.metadata == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(entry.metadata.getNamespaces().size());
+            for (String ns : entry.metadata.getNamespaces()) {
+                Map<String, String> fields = entry.metadata.getFields(ns);
+                out.writeInt(names.get(ns));
+                out.writeInt(fields.size());
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    out.writeInt(names.get(field.getKey()));
+                    writeString(out, field.getValue());
+                }
+            }
+        }
+    }
+
+    private static void intern(Map<String, Integer> names, String name) {
+        if (!names.containsKey(name)) {
+            names.put(name, names.size());
+        }
+    }
+
+    /** Deserialize the catalog from its index file */
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a GUANO catalog: " + indexFile);
+            if (in.readInt() != VERSION) throw new IOException("Unsupported GUANO catalog version: " + indexFile);
+
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString(in);
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Path path = Paths.get(readString(in));
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int nsCount = in.readInt();
+                GuanoReader metadata = null;
+                if (nsCount >= 0) {
+                    metadata = new GuanoReader();
+                    for (int j = 0; j < nsCount; j++) {
+                        String ns = names[in.readInt()];
+                        int fieldCount = in.readInt();
+                        for (int k = 0; k < fieldCount; k++) {
+                            metadata.insert(ns, names[in.readInt()], readString(in));
+                        }
+                    }
+                }
+                entries.put(path, new Entry(path, size, lastModified, metadata));
+            }
+        }
+    }
+
+    /** Strings are length-prefixed UTF-8, since <code>writeUTF()</code> is limited to 64KB */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Example main function which brings a catalog up to date with a directory */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java guano.GuanoCatalog INDEXFILE DIRECTORY");
+            System.exit(2);
+        }
+
+        try (GuanoScanner scanner = new GuanoScanner()) {
+            GuanoCatalog catalog = new GuanoCatalog(Paths.get(args[0]));
+            int parsed = catalog.update(Paths.get(args[1]), scanner);
+            catalog.save();
+            for (Map.Entry<Path, IOException> unreadable : catalog.getUnreadable().entrySet()) {
+                System.err.println(String.format("%s\t%s", unreadable.getKey(), unreadable.getValue()));
+            }
+            System.out.println(String.format("%d files catalogued, %d parsed", catalog.getEntries().size(), parsed));
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package guano;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+/**
+ * Streaming decimator, which produces reduced-samplerate copies of 16-bit mono recordings in constant memory.
+ *
+ * The source <code>data</code> chunk is read in blocks through <code>WaveSampleReader</code>, passed through
+ * a linear-phase windowed-sinc anti-alias FIR low-pass filter, and only every <i>n</i>th output sample is
+ * computed and streamed to a <code>GuanoWaveWriter</code>. The filter is centered on each retained sample,
+ * so the output is not delayed relative to the source. All GUANO fields are copied from the source, except
+ * that <code>Samplerate</code>, <code>Length</code>, and <code>Filter LP</code> are updated to describe the
+ * decimated recording. See the example <code>main()</code> function below for API usage example.
+ *
+ * Instances are immutable, and may be used from multiple threads concurrently.
+ */
+public class GuanoDecimator {
+
+    /** Number of source frames read per block */
+    private static final int BLOCK_FRAMES = 64 * 1024;
+
+    /** Filter length per unit of decimation factor; longer filters have a sharper transition band */
+    private static final int TAPS_PER_FACTOR = 24;
+
+    /** Filter cutoff as a fraction of the output Nyquist frequency, leaving room for the transition band */
+    private static final double CUTOFF = 0.9;
+
+    private final int factor;
+    private final float[] taps;
+
+    /**
+     * Create a decimator.
+     * @param factor integer decimation factor, eg. 4 to reduce 500kHz recordings to 125kHz
+     */
+    public GuanoDecimator(int factor) {
+        if (factor < 2) throw new IllegalArgumentException("factor must be at least 2");
+        this.factor = factor;
+        this.taps = lowPass(TAPS_PER_FACTOR * factor + 1, CUTOFF / factor);
+    }
+
+    /**
+     * Design a Blackman-windowed sinc low-pass filter with unity gain at DC.
+     * @param length number of taps, which should be odd
+     * @param cutoff cutoff frequency as a fraction of the input Nyquist frequency
+     */
+    static float[] lowPass(int length, double cutoff) {
+        double[] h = new double[length];
+        int center = (length - 1) / 2;
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            int n = i - center;
+            double sinc = n == 0 ? cutoff : Math.sin(Math.PI * cutoff * n) / (Math.PI * n);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+            h[i] = sinc * window;
+            sum += h[i];
+        }
+        float[] taps = new float[length];
+        for (int i = 0; i < length; i++) {
+            taps[i] = (float) (h[i] / sum);
+        }
+        return taps;
+    }
+
+    /**
+     * Decimate a single file.
+     * @param source a 16-bit mono .WAV file
+     * @param destination file to write, which is replaced if it exists, or deleted if decimation fails
+     * @return number of frames written
+     * @throws IOException
+     */
+    public long decimate(Path source, Path destination) throws IOException {
+        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+            throw new IOException("Cannot decimate a file in place: " + source);
+        }
+        try {
+            return decimateTo(source, destination);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(destination);
+            throw e;
+        }
+    }
+
+    private long decimateTo(Path source, Path destination) throws IOException {
+        try (WaveSampleReader reader = new WaveSampleReader(source);
+             GuanoWaveWriter writer = new GuanoWaveWriter(destination.toFile())) {
+            WaveFormat format = reader.getFormat();
+            if (format.getChannels() != 1) throw new IOException("Only mono recordings may be decimated: " + format);
+            int outputRate = format.getSampleRate() / factor;
+            if (outputRate * factor != format.getSampleRate()) {
+                throw new IOException(String.format("Samplerate %d Hz is not divisible by %d", format.getSampleRate(), factor));
+            }
+
+            GuanoReader metadata = new GuanoReader(source.toFile());
+            for (String ns : metadata.getNamespaces()) {
+                for (Map.Entry<String, String> field : metadata.getFields(ns).entrySet()) {
+                    writer.setString(ns, field.getKey(), field.getValue());
+                }
+            }
+
+            writer.startAudioStream(outputRate);
+            long frames = filter(reader, writer);
+
+            // Samplerate and Filter LP describe real-world frequencies, which differ from the .WAV samplerate if time-expanded
+            double te = metadata.getDouble(GuanoField.TE);
+            if (Double.isNaN(te) || te <= 0) te = 1;
+            double sampleRate = metadata.getDouble(GuanoField.SAMPLERATE);
+            if (Double.isNaN(sampleRate)) sampleRate = format.getSampleRate() * te;
+            double filterLp = CUTOFF * outputRate / 2 * te / 1000;  // kHz
+            double previousLp = metadata.getDouble(GuanoField.FILTER_LP);
+            if (!Double.isNaN(previousLp)) filterLp = Math.min(filterLp, previousLp);
+
+            writer.setInt(GuanoField.SAMPLERATE, (int) Math.round(sampleRate / factor));
+            writer.setFloat(GuanoField.FILTER_LP, (float) filterLp);
+            writer.setFloat(GuanoField.LENGTH, (float) frames / outputRate);
+            return frames;
+        }
+    }
+
+    /**
+     * Stream the source through the filter, computing only the retained output samples.
+     * The source is conceptually padded with zeros on both sides so that each output sample
+     * is the filter centered on source sample <code>k * factor</code>.
+     */
+    private long filter(WaveSampleReader reader, GuanoWaveWriter writer) throws IOException {
+        final int n = taps.length;
+        final int delay = (n - 1) / 2;
+        final long inputFrames = reader.getFrameCount();
+        final long outputFrames = (inputFrames + factor - 1) / factor;
+
+        float[] window = new float[n - 1 + BLOCK_FRAMES];
+        int filled = delay;  // leading zeros
+        int next = 0;  // window index at which the next output's filter starts
+        ShortBuffer block = ShortBuffer.allocate(BLOCK_FRAMES);
+        short[] output = new short[BLOCK_FRAMES / factor + 1];
+        long read = 0, written = 0;
+
+        while (written < outputFrames) {
+            // refill the window with source samples, or trailing zeros past the end
+            int space = window.length - filled;
+            if (read < inputFrames) {
+                block.clear().limit(Math.min(space, BLOCK_FRAMES));
+                int count = reader.read(block, read);
+                read += count;
+                block.flip();
+                for (int i = 0; i < count; i++) {
+                    window[filled++] = block.get(i);
+                }
+            } else {
+                int count = Math.min(space, delay);
+                Arrays.fill(window, filled, filled + count, 0f);
+                filled += count;
+            }
+
+            int produced = 0;
+            while (next + n <= filled && written + produced < outputFrames) {
+                float acc = 0;
+                for (int j = 0; j < n; j++) {
+                    acc += taps[j] * window[next + j];
+                }
+                output[produced++] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(acc)));
+                next += factor;
+            }
+            writer.appendSamples(output, 0, produced);
+            written += produced;
+
+            // slide the unconsumed samples to the front of the window
+            System.arraycopy(window, next, window, 0, filled - next);
+            filled -= next;
+            next = 0;
+        }
+        return written;
+    }
+
+    /**
+     * Decimate every .WAV file beneath a directory concurrently. The directory structure
+     * of the source tree is reproduced beneath the output directory. An output directory within
+     * the source tree is skipped, so that decimated copies are never decimated again.
+     * @param root a directory to walk recursively, or a single file
+     * @param outputDir a directory other than <code>root</code> itself
+     * @param scanner used to decimate files concurrently
+     * @return a lazy stream of per-file results holding the number of frames written, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<GuanoScanner.Result<Long>> decimateAll(final Path root, final Path outputDir,
+                                                         GuanoScanner scanner) throws IOException {
+        Path excluded = outputDir.toAbsolutePath().normalize();
+        if (excluded.equals(root.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Output directory must differ from the source directory: " + outputDir);
+        }
+        return scanner.scan(root, excluded, path -> {
+            Path destination = outputDir.resolve(root.relativize(path).toString());
+            if (destination.equals(outputDir)) destination = outputDir.resolve(path.getFileName());  // root is a single file
+            Files.createDirectories(destination.getParent());
+            return decimate(path, destination);
+        });
+    }
+
+    /** Example main function which decimates a directory tree of recordings */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("usage: java guano.GuanoDecimator DIRECTORY OUTPUT_DIRECTORY FACTOR");
+            System.exit(2);
+        }
+
+        GuanoDecimator decimator = new GuanoDecimator(Integer.parseInt(args[2]));
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<GuanoScanner.Result<Long>> results = decimator.decimateAll(Paths.get(args[0]), Paths.get(args[1]), scanner)) {
+            results.forEach(result -> {
+                if (result.isSuccess()) {
+                    System.out.println(String.format("%s\t%d frames", result.getPath(), result.getValue()));
+                } else {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
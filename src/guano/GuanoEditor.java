@@ -0,0 +1,320 @@
+package guano;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+/**
+ * Edits the GUANO metadata of an existing .WAV file in place, without rewriting its audio data.
+ *
+ * The existing metadata is read when the editor is opened, fields are changed with the
+ * <code>setString()</code>, <code>setInt()</code>, and <code>setFloat()</code> methods, and
+ * <code>save()</code> writes the new <code>guan</code> chunk. Only the end of the file is ever
+ * rewritten. See the example <code>main()</code> function below for API usage example.
+ *
+ * Saving is crash-safe: the file is a valid .WAV file, holding either the old or the new
+ * metadata, at every point in the process. The new chunk is first appended to the end of the
+ * file; an incomplete chunk is ignored by readers, so only once it is fully written is the old
+ * <code>guan</code> chunk retired by renaming it to <code>JUNK</code>. When the old chunk was at
+ * the end of the file, and there is room, the new chunk is then moved down into the space it
+ * occupied and the file truncated, so that repeated edits don't grow the file. That space is first
+ * merged into a single <code>JUNK</code> chunk, so no partially overwritten chunk header is ever reachable.
+ */
+public class GuanoEditor implements Closeable {
+
+    private static final String JUNK_CHUNK_ID = "JUNK";
+
+    private final FileChannel channel;
+
+    /** Offset of the <code>ds64</code> chunk's data in an RF64 file, or -1 */
+    private long ds64Offset = -1;
+
+    /** Stateful mapping of namespace to field key->value mapping */
+    private Map<String, Map<String, String>> namespaceFields = new HashMap<>();
+
+    public GuanoEditor(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    public GuanoEditor(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    /**
+     * Open a file for editing, and read its current metadata.
+     * @param path
+     * @throws IOException
+     */
+    public GuanoEditor(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            WaveReader reader = new WaveReader(channel, Collections.singleton(GuanoReader.GUANO_CHUNK_ID));
+            byte[] guanChunk = reader.getChunk(GuanoReader.GUANO_CHUNK_ID);
+            if (guanChunk != null) {
+                GuanoReader guano = new GuanoReader(guanChunk);
+                for (String ns : guano.getNamespaces()) {
+                    namespaceFields.put(ns, new HashMap<>(guano.getFields(ns)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Get a list of all namespaces present in the metadata */
+    public Set<String> getNamespaces() {
+        return namespaceFields.keySet();
+    }
+
+    /**
+     * Get all fields present under the specified namespace as a key->value mapping
+     * @param namespace a namespace, or empty string to ask for top-level fields
+     * @return
+     */
+    public Map<String, String> getFields(String namespace) {
+        return namespaceFields.get(namespace);
+    }
+
+    /**
+     * Get a single field's String value.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @return the value, or <code>null</code> if the field is not present
+     */
+    public String getString(String namespace, String fieldname) {
+        Map<String, String> fields = namespaceFields.get(namespace);
+        return fields != null ? fields.get(fieldname) : null;
+    }
+
+    /**
+     * Set a metadata field with String value.
+     * @param fieldname top-level fieldname, or pipe-delimited namespaced fieldname
+     * @param value
+     */
+    public void setString(String fieldname, String value) {
+        String ns = "";
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
+        }
+        setString(ns, fieldname, value);
+    }
+
+    /**
+     * Set a metadata field with String value.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setString(GuanoField field, String value) {
+        setString("", field.toString(), value);
+    }
+
+    /**
+     * Set a metadata field with String value.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     */
+    public void setString(String namespace, String fieldname, String value) {
+        if (!namespaceFields.containsKey(namespace)) {
+            namespaceFields.put(namespace, new HashMap<String, String>());
+        }
+        namespaceFields.get(namespace).put(fieldname, value);
+    }
+
+    /**
+     * Set a metadata field with Integer value.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setInt(GuanoField field, int value) {
+        setString(field, Integer.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Integer value.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     */
+    public void setInt(String namespace, String fieldname, int value) {
+        setString(namespace, fieldname, Integer.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Float value.
+     * @param field top-level field enum
+     * @param value
+     */
+    public void setFloat(GuanoField field, float value) {
+        setString(field, Float.toString(value));
+    }
+
+    /**
+     * Set a metadata field with Float value.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param value
+     */
+    public void setFloat(String namespace, String fieldname, float value) {
+        setString(namespace, fieldname, Float.toString(value));
+    }
+
+    /**
+     * Remove a metadata field.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     */
+    public void remove(String namespace, String fieldname) {
+        Map<String, String> fields = namespaceFields.get(namespace);
+        if (fields != null) {
+            fields.remove(fieldname);
+            if (fields.isEmpty()) namespaceFields.remove(namespace);
+        }
+    }
+
+    /**
+     * Write the edited metadata to the file.
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        WaveReader reader = new WaveReader(channel, Collections.<String>emptySet());
+        List<WaveReader.ChunkHeader> headers = reader.getChunkHeaders();
+        long end = headers.isEmpty() ? 12 : headers.get(headers.size() - 1).end();
+        if (end != channel.size()) throw new IOException("File appears truncated or damaged, refusing to edit it in place");
+        ds64Offset = reader.isRf64() ? reader.getChunkOffset(WaveReader.DS64_CHUNK_ID) : -1;
+
+        byte[] metadata = GuanoWaveWriter.renderMetadata(namespaceFields).getBytes(StandardCharsets.UTF_8);
+        long size = metadata.length + (metadata.length % 2);  // pad for 16-bit alignment
+
+        // the trailing run of guan and JUNK chunks is free space once the new chunk is committed
+        long freeStart = end;
+        long freeFirstEnd = end;  // end of the run's first chunk
+        for (int i = headers.size() - 1; i >= 0; i--) {
+            String id = headers.get(i).id;
+            if (!id.equals(GuanoReader.GUANO_CHUNK_ID) && !id.equals(JUNK_CHUNK_ID)) break;
+            freeStart = headers.get(i).offset;
+            freeFirstEnd = headers.get(i).end();
+        }
+
+        if (ds64Offset < 0 && end + size >= WaveReader.RF64_SIZE_PLACEHOLDER) {
+            throw new IOException("File too large for a .WAV file");
+        }
+
+        // append the new chunk, which readers ignore until it is completely written
+        writeChunk(end, metadata, size);
+        channel.force(true);
+
+        // retire the old chunk(s)
+        for (WaveReader.ChunkHeader header : headers) {
+            if (header.id.equals(GuanoReader.GUANO_CHUNK_ID)) {
+                writeHeader(header.offset, JUNK_CHUNK_ID, header.size);
+            }
+        }
+        writeRiffSize(end + 8 + size);
+        channel.force(true);
+
+        // move the new chunk down into the free space, if it fits, and truncate
+        long room = end - freeStart;
+        if (room >= 8 + size) {
+            long fill = room - (8 + size);
+            if (fill > 0 && fill < 8) {
+                size += fill;  // too small to hold a JUNK chunk, so pad the metadata instead
+                fill = 0;
+            }
+            if (freeFirstEnd != end) {
+                // the run is several chunks, whose headers the new body may overwrite; first merge them
+                // into one JUNK chunk, so that the walk still skips straight to the new chunk at the end
+                writeHeader(freeStart, JUNK_CHUNK_ID, room - 8);
+                channel.force(true);
+            }
+            writeFully(paddedBody(metadata, size), freeStart + 8);
+            if (fill > 0) {
+                writeHeader(freeStart + 8 + size, JUNK_CHUNK_ID, fill - 8);
+            }
+            channel.force(true);
+
+            writeHeader(freeStart, GuanoReader.GUANO_CHUNK_ID, size);
+            channel.force(true);
+
+            writeRiffSize(freeStart + 8 + size);
+            channel.truncate(freeStart + 8 + size);
+            channel.force(true);
+        }
+    }
+
+    /** Write a complete <code>guan</code> chunk, body first so that it's never seen partially written */
+    private void writeChunk(long offset, byte[] metadata, long size) throws IOException {
+        writeFully(paddedBody(metadata, size), offset + 8);
+        writeHeader(offset, GuanoReader.GUANO_CHUNK_ID, size);
+    }
+
+    /** Metadata padded out with newlines, which GUANO readers ignore */
+    private static ByteBuffer paddedBody(byte[] metadata, long size) {
+        ByteBuffer body = ByteBuffer.allocate((int) size);
+        body.put(metadata);
+        while (body.hasRemaining()) {
+            body.put((byte) '\n');
+        }
+        body.flip();
+        return body;
+    }
+
+    private void writeHeader(long offset, String id, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(id.getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) size);
+        header.flip();
+        writeFully(header, offset);
+    }
+
+    /** Update the RIFF size, which RF64 files keep in their <code>ds64</code> chunk */
+    private void writeRiffSize(long end) throws IOException {
+        if (ds64Offset >= 0) {
+            ByteBuffer riffSize = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            riffSize.putLong(0, end - 8);
+            writeFully(riffSize, ds64Offset);
+        } else {
+            ByteBuffer riffSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            riffSize.putInt(0, (int) (end - 8));
+            writeFully(riffSize, 4);
+        }
+    }
+
+    private void writeFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            offset += channel.write(buf, offset);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Example main function which sets a single field, eg. `Species Manual ID` */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("usage: java guano.GuanoEditor WAVFILE FIELDNAME VALUE");
+            System.exit(2);
+        }
+
+        try (GuanoEditor editor = new GuanoEditor(args[0])) {
+            editor.setString(args[1], args[2]);
+            editor.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
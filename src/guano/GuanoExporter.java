@@ -0,0 +1,249 @@
+package guano;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+
+/**
+ * Exports the GUANO metadata of every file in a corpus to CSV or JSON Lines, one row per file.
+ *
+ * Files are parsed concurrently by a <code>GuanoScanner</code>, and each worker renders its file's
+ * complete output row, so the writing thread does nothing but copy finished rows to the output in
+ * the order the files were listed. Since only a bounded number of files are in flight at once and
+ * nothing is retained once written, memory use is fixed regardless of the size of the corpus.
+ *
+ * Columns are named as GUANO fields are written, ie. <code>Timestamp</code> for top-level fields
+ * and <code>SB|Avg Duration</code> for namespaced fields, and are preceded by a <code>path</code>
+ * column. They may be supplied up front with <code>columns()</code>; otherwise, CSV export makes a
+ * quick first pass over the corpus to discover every field present. JSON Lines rows without
+ * supplied columns simply contain every field of each file. See the example <code>main()</code>
+ * function below for API usage example.
+ */
+public class GuanoExporter {
+
+    public enum Format { CSV, JSONL }
+
+    private static final String PATH_COLUMN = "path";
+
+    private final Format format;
+    private List<String> columns = null;  // null to discover
+    private BiConsumer<Path, Exception> errorHandler = (path, e) -> {};
+
+    public GuanoExporter(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Export only the specified columns, in the specified order.
+     * @param columns top-level fieldnames, or pipe-delimited namespaced fieldnames
+     * @return this exporter
+     */
+    public GuanoExporter columns(List<String> columns) {
+        this.columns = new ArrayList<>(columns);
+        return this;
+    }
+
+    /**
+     * Be notified of files which cannot be read. Such files are otherwise silently skipped.
+     * @return this exporter
+     */
+    public GuanoExporter onError(BiConsumer<Path, Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * Export every .WAV file beneath a directory.
+     * @param root a directory to walk recursively, or a single file
+     * @param scanner used to parse files concurrently
+     * @param out destination, which should be buffered; it is flushed but not closed
+     * @return number of rows written, not counting any header
+     * @throws IOException
+     */
+    public long export(Path root, GuanoScanner scanner, Writer out) throws IOException {
+        final List<String> columns = this.columns != null || format == Format.JSONL
+                ? this.columns : discoverColumns(root, scanner);
+        final String[][] keys = columns != null ? splitColumns(columns) : null;
+
+        if (format == Format.CSV) {
+            List<String> header = new ArrayList<>();
+            header.add(PATH_COLUMN);
+            header.addAll(columns);
+            writeCsvRow(out, header);
+        }
+
+        long rows = 0;
+        try (Stream<GuanoScanner.Result<String>> results = scanner.scanOrdered(root, path -> render(path, keys))) {
+            Iterator<GuanoScanner.Result<String>> it = results.iterator();
+            while (it.hasNext()) {
+                GuanoScanner.Result<String> result = it.next();
+                if (result.isSuccess()) {
+                    out.write(result.getValue());
+                    rows++;
+                } else {
+                    errorHandler.accept(result.getPath(), result.getError());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        return rows;
+    }
+
+    /**
+     * Find every field present anywhere in the corpus. Only the distinct names are retained.
+     * @return columns sorted with top-level fields first, then by namespace and fieldname
+     */
+    private List<String> discoverColumns(Path root, GuanoScanner scanner) throws IOException {
+        SortedMap<String, SortedSet<String>> found = new TreeMap<>();
+        try (Stream<GuanoScanner.Result<GuanoReader>> results = scanner.scan(root)) {
+            Iterator<GuanoScanner.Result<GuanoReader>> it = results.iterator();
+            while (it.hasNext()) {
+                GuanoScanner.Result<GuanoReader> result = it.next();
+                if (!result.isSuccess()) continue;
+                GuanoReader reader = result.getValue();
+                for (String ns : reader.getNamespaces()) {
+                    if (!found.containsKey(ns)) found.put(ns, new TreeSet<String>());
+                    found.get(ns).addAll(reader.getFieldnames(ns));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (Map.Entry<String, SortedSet<String>> ns : found.entrySet()) {
+            for (String field : ns.getValue()) {
+                columns.add(ns.getKey().isEmpty() ? field : ns.getKey() + "|" + field);
+            }
+        }
+        return columns;
+    }
+
+    /** Split pipe-delimited column names into namespace, fieldname pairs */
+    private static String[][] splitColumns(List<String> columns) {
+        String[][] keys = new String[columns.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            String column = columns.get(i);
+            int pipe = column.indexOf('|');
+            keys[i] = pipe >= 0
+                    ? new String[] { column.substring(0, pipe), column.substring(pipe + 1) }
+                    : new String[] { "", column };
+        }
+        return keys;
+    }
+
+    /** Parse a single file and render its complete output row, including the line terminator */
+    private String render(Path path, String[][] keys) throws IOException {
+        GuanoReader reader = new GuanoReader(path.toFile());
+        StringWriter row = new StringWriter();
+
+        if (format == Format.CSV) {
+            List<String> values = new ArrayList<>(keys.length + 1);
+            values.add(path.toString());
+            for (String[] key : keys) {
+                values.add(reader.getString(key[0], key[1]));
+            }
+            writeCsvRow(row, values);
+            return row.toString();
+        }
+
+        row.write('{');
+        writeJsonString(row, PATH_COLUMN);
+        row.write(':');
+        writeJsonString(row, path.toString());
+        if (keys != null) {
+            for (String[] key : keys) {
+                String value = reader.getString(key[0], key[1]);
+                if (value != null) writeJsonField(row, key[0], key[1], value);
+            }
+        } else {
+            for (String ns : reader.getNamespaces()) {
+                for (Map.Entry<String, String> field : reader.getFields(ns).entrySet()) {
+                    writeJsonField(row, ns, field.getKey(), field.getValue());
+                }
+            }
+        }
+        row.write("}\n");
+        return row.toString();
+    }
+
+    /** Write a CSV record per RFC 4180; absent values are written as empty fields */
+    private static void writeCsvRow(Writer out, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) out.write(',');
+            String value = values.get(i);
+            if (value == null) continue;
+            boolean quote = false;
+            for (int j = 0; j < value.length() && !quote; j++) {
+                char c = value.charAt(j);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (quote) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private static void writeJsonField(Writer out, String ns, String field, String value) throws IOException {
+        out.write(',');
+        writeJsonString(out, ns.isEmpty() ? field : ns + "|" + field);
+        out.write(':');
+        writeJsonString(out, value);
+    }
+
+    private static void writeJsonString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    /** Example main function which exports a directory tree to standard output */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java guano.GuanoExporter csv|jsonl DIRECTORY [COLUMN...]");
+            System.exit(2);
+        }
+
+        GuanoExporter exporter = new GuanoExporter(Format.valueOf(args[0].toUpperCase()))
+                .onError((path, e) -> System.err.println(String.format("%s\t%s", path, e)));
+        if (args.length > 2) {
+            exporter.columns(Arrays.asList(args).subList(2, args.length));
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        try (GuanoScanner scanner = new GuanoScanner()) {
+            long rows = exporter.export(Paths.get(args[1]), scanner, out);
+            System.err.println(String.format("exported %d files", rows));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Publishes the audio of a recording as a reactive stream of fixed-size blocks of PCM frames.
+ *
+ * Each block is a <code>ShortBuffer</code> of interleaved 16-bit samples (converted, for wider formats),
+ * ready for reading, holding <code>blockFrames</code> frames (the final block may be shorter). Blocks are read from the file only
+ * as subscribers request them, so a slow subscriber holds back the reading rather than letting unread
+ * audio pile up in memory: at most the number of blocks requested is ever read ahead. Each subscriber
+ * receives the whole recording from its start, read through its own positional reads and delivered on
+ * the publisher's <code>Executor</code>; the file is opened on the first request and closed on completion,
+ * error, or cancellation.
+ *
+ * The file's format and GUANO metadata are read when the publisher is created, so they are available
+ * before the first block is published. See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoFramePublisher implements Flow.Publisher<ShortBuffer> {
+
+    private final Path path;
+    private final int blockFrames;
+    private final Executor executor;
+    private final WaveFormat format;
+    private final GuanoReader metadata;
+    private final long frameCount;
+
+    /**
+     * Create a publisher which delivers blocks on the common fork-join pool.
+     * @param path a .WAV file in any format supported by <code>SampleCodec</code>
+     * @param blockFrames number of frames per block
+     * @throws IOException
+     */
+    public GuanoFramePublisher(Path path, int blockFrames) throws IOException {
+        this(path, blockFrames, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a publisher.
+     * @param path a .WAV file in any format supported by <code>SampleCodec</code>
+     * @param blockFrames number of frames per block
+     * @param executor runs the reading and delivery of blocks to subscribers
+     * @throws IOException
+     */
+    public GuanoFramePublisher(Path path, int blockFrames, Executor executor) throws IOException {
+        if (blockFrames < 1) throw new IllegalArgumentException("blockFrames must be positive");
+        this.path = path;
+        this.blockFrames = blockFrames;
+        this.executor = executor;
+        WaveReader reader = new WaveReader(path.toFile(), WaveReader.METADATA_CHUNK_IDS);
+        byte[] fmtChunk = reader.getChunk(WaveReader.FMT_CHUNK_ID);
+        if (fmtChunk == null) throw new IOException("fmt chunk not found");
+        if (!reader.hasChunk(WaveReader.DATA_CHUNK_ID)) throw new IOException("data chunk not found");
+        this.format = WaveFormat.parse(fmtChunk);
+        SampleCodec.forFormat(format);  // rejects unsupported formats up front
+        this.metadata = new GuanoReader(reader);
+        this.frameCount = reader.getChunkSize(WaveReader.DATA_CHUNK_ID) / format.getBlockAlign();
+    }
+
+    public WaveFormat getFormat() {
+        return format;
+    }
+
+    /** @return the recording's GUANO metadata, which is empty if it has none */
+    public GuanoReader getMetadata() {
+        return metadata;
+    }
+
+    /** @return total number of frames (one sample for every channel) which will be published */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** @return number of blocks which will be published */
+    public long getBlockCount() {
+        return (frameCount + blockFrames - 1) / blockFrames;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ShortBuffer> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");
+        FrameSubscription subscription = new FrameSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Reads and delivers blocks while there is outstanding demand. Requests and cancellations may
+     * arrive from any thread; they only adjust counters and schedule the drain loop, which runs on at
+     * most one executor thread at a time, so signals to the subscriber are never concurrent.
+     */
+    private class FrameSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super ShortBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();  // drain requests not yet seen by the drain loop
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private WaveSampleReader reader;  // only accessed by the drain loop
+        private long nextFrame = 0;
+        private boolean done;
+
+        FrameSubscription(Flow.Subscriber<? super ShortBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                long current, updated;
+                do {
+                    current = demand.get();
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;  // saturate, meaning unbounded
+                } while (!demand.compareAndSet(current, updated));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();  // closes the file
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done) drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            try {
+                if (invalidRequest != null) {
+                    finish(invalidRequest);
+                    return;
+                }
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted < requested && !cancelled && nextFrame < frameCount) {
+                    if (reader == null) reader = new WaveSampleReader(path);
+                    ShortBuffer block = ShortBuffer.allocate(blockFrames * format.getChannels());
+                    nextFrame += reader.read(block, nextFrame);
+                    block.flip();
+                    subscriber.onNext(block);
+                    emitted++;
+                }
+                if (emitted > 0 && requested != Long.MAX_VALUE) demand.addAndGet(-emitted);
+                if (cancelled) {
+                    finish(null);
+                } else if (nextFrame >= frameCount) {
+                    finish(null);
+                    subscriber.onComplete();
+                }
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        /** Release the file, and signal any error; no further signals follow */
+        private void finish(Throwable error) {
+            done = true;
+            cancelled = true;
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    if (error == null) error = e;
+                }
+                reader = null;
+            }
+            if (error != null) subscriber.onError(error);
+        }
+    }
+
+    /** Example main function which prints the metadata of a recording, then the peak amplitude of each block */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoFramePublisher WAVFILE [BLOCK_FRAMES]");
+            System.exit(2);
+        }
+
+        GuanoFramePublisher publisher;
+        try {
+            publisher = new GuanoFramePublisher(Paths.get(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 4096);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.out.println(String.format("%s, %s, %d blocks", new File(args[0]).getName(), publisher.getFormat(), publisher.getBlockCount()));
+        System.out.println(String.format("Timestamp: %s", publisher.getMetadata().getString(GuanoField.TIMESTAMP)));
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        publisher.subscribe(new Flow.Subscriber<ShortBuffer>() {
+            private Flow.Subscription subscription;
+            private int blocks = 0;
+
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);  // one block at a time, as a slow classifier would
+            }
+
+            public void onNext(ShortBuffer block) {
+                int peak = 0;
+                while (block.hasRemaining()) {
+                    peak = Math.max(peak, Math.abs(block.get()));
+                }
+                System.out.println(String.format("block %d: peak amplitude %d", blocks++, peak));
+                subscription.request(1);
+            }
+
+            public void onError(Throwable error) {
+                error.printStackTrace();
+                finished.countDown();
+            }
+
+            public void onComplete() {
+                finished.countDown();
+            }
+        });
+        finished.await();
+    }
+
+}
@@ -0,0 +1,262 @@
+package guano;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+
+/**
+ * Library-wide counters and timers for reading, parsing, and writing, for sizing and monitoring
+ * ingest workloads.
+ *
+ * <code>WaveReader</code>, <code>GuanoReader</code>, and the writers record every file they handle
+ * here. Reading time is split between walking the chunk headers and reading the data of the chunks
+ * loaded, eg. the <code>data</code> chunk when all chunks are read, and parsing is timed separately again.
+ * Recording costs a pair of <code>System.nanoTime()</code> calls and a few uncontended
+ * <code>LongAdder</code> increments per file, another pair per chunk loaded, and nothing at all
+ * per sample or per chunk byte. A listener which throws is logged, and never fails the work it observes.
+ * Totals are available from <code>getInstance()</code>, over JMX once <code>registerMBean()</code>
+ * has been called, and per-event through a <code>GuanoMetricsListener</code>.
+ */
+public final class GuanoMetrics implements GuanoMetricsMXBean {
+
+    /** JMX name under which the metrics are registered */
+    public static final String OBJECT_NAME = "guano:type=Metrics";
+
+    private static final GuanoMetrics INSTANCE = new GuanoMetrics();
+
+    private static final Logger LOG = Logger.getLogger(GuanoMetrics.class.getName());
+
+    private final LongAdder filesRead = new LongAdder();
+    private final LongAdder chunksRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesSkipped = new LongAdder();
+    private final LongAdder walkNanos = new LongAdder();
+    private final LongAdder dataReadNanos = new LongAdder();
+    private final LongAdder filesParsed = new LongAdder();
+    private final LongAdder fieldsParsed = new LongAdder();
+    private final LongAdder metadataBytesParsed = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+
+    private final List<GuanoMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private GuanoMetrics() {
+    }
+
+    /** @return the library-wide metrics */
+    public static GuanoMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server as {@value #OBJECT_NAME}.
+     * Registering more than once has no effect.
+     * @throws JMException
+     */
+    public static void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        }
+    }
+
+    public static void addListener(GuanoMetricsListener listener) {
+        INSTANCE.listeners.add(listener);
+    }
+
+    public static void removeListener(GuanoMetricsListener listener) {
+        INSTANCE.listeners.remove(listener);
+    }
+
+    /**
+     * @param walkNanos time spent walking chunk headers and seeking past unwanted chunks
+     * @param dataNanos time spent reading the data of loaded chunks
+     */
+    static void recordRead(int chunks, long bytesRead, long bytesSkipped, long walkNanos, long dataNanos) {
+        GuanoMetrics m = INSTANCE;
+        m.filesRead.increment();
+        m.chunksRead.add(chunks);
+        m.bytesRead.add(bytesRead);
+        m.bytesSkipped.add(bytesSkipped);
+        m.walkNanos.add(walkNanos);
+        m.dataReadNanos.add(dataNanos);
+        for (GuanoMetricsListener listener : m.listeners) {
+            try {
+                listener.fileRead(chunks, bytesRead, bytesSkipped, walkNanos, dataNanos);
+            } catch (RuntimeException e) {
+                listenerFailed(listener, e);
+            }
+        }
+    }
+
+    static void recordParse(int bytes, int fields, long nanos) {
+        GuanoMetrics m = INSTANCE;
+        m.filesParsed.increment();
+        m.fieldsParsed.add(fields);
+        m.metadataBytesParsed.add(bytes);
+        m.parseNanos.add(nanos);
+        for (GuanoMetricsListener listener : m.listeners) {
+            try {
+                listener.metadataParsed(bytes, fields, nanos);
+            } catch (RuntimeException e) {
+                listenerFailed(listener, e);
+            }
+        }
+    }
+
+    static void recordWrite(long bytes, long nanos) {
+        GuanoMetrics m = INSTANCE;
+        m.filesWritten.increment();
+        m.bytesWritten.add(bytes);
+        m.writeNanos.add(nanos);
+        for (GuanoMetricsListener listener : m.listeners) {
+            try {
+                listener.fileWritten(bytes, nanos);
+            } catch (RuntimeException e) {
+                listenerFailed(listener, e);
+            }
+        }
+    }
+
+    private static void listenerFailed(GuanoMetricsListener listener, RuntimeException e) {
+        LOG.log(Level.WARNING, "GuanoMetricsListener " + listener + " failed", e);
+    }
+
+    @Override
+    public long getFilesRead() {
+        return filesRead.sum();
+    }
+
+    @Override
+    public long getChunksRead() {
+        return chunksRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesSkipped() {
+        return bytesSkipped.sum();
+    }
+
+    @Override
+    public long getReadNanos() {
+        return walkNanos.sum() + dataReadNanos.sum();
+    }
+
+    @Override
+    public long getWalkNanos() {
+        return walkNanos.sum();
+    }
+
+    @Override
+    public long getDataReadNanos() {
+        return dataReadNanos.sum();
+    }
+
+    @Override
+    public long getFilesParsed() {
+        return filesParsed.sum();
+    }
+
+    @Override
+    public long getFieldsParsed() {
+        return fieldsParsed.sum();
+    }
+
+    @Override
+    public long getMetadataBytesParsed() {
+        return metadataBytesParsed.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getFilesWritten() {
+        return filesWritten.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return writeNanos.sum();
+    }
+
+    @Override
+    public double getFilesReadPerSecond() {
+        return perSecond(filesRead.sum());
+    }
+
+    @Override
+    public double getFilesWrittenPerSecond() {
+        return perSecond(filesWritten.sum());
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed > 0 ? count * 1e9 / elapsed : 0.0;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { filesRead, chunksRead, bytesRead, bytesSkipped, walkNanos, dataReadNanos,
+                filesParsed, fieldsParsed, metadataBytesParsed, parseNanos, filesWritten, bytesWritten, writeNanos }) {
+            adder.reset();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    public String toString() {
+        return String.format("read %d files (%d chunks, %d bytes read, %d skipped) in %.1f ms (%.1f ms walking, %.1f ms reading data); "
+                        + "parsed %d fields from %d files in %.1f ms; wrote %d files (%d bytes) in %.1f ms",
+                getFilesRead(), getChunksRead(), getBytesRead(), getBytesSkipped(), getReadNanos() / 1e6, getWalkNanos() / 1e6, getDataReadNanos() / 1e6,
+                getFieldsParsed(), getFilesParsed(), getParseNanos() / 1e6,
+                getFilesWritten(), getBytesWritten(), getWriteNanos() / 1e6);
+    }
+
+    /** Example main function which reads the metadata of a directory tree, then prints the totals */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoMetrics DIRECTORY");
+            System.exit(2);
+        }
+
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<GuanoScanner.Result<GuanoReader>> results = scanner.scan(Paths.get(args[0]))) {
+            registerMBean();
+            results.forEach(result -> {});
+            System.out.println(getInstance());
+            System.out.println(String.format("%.0f files/sec", getInstance().getFilesReadPerSecond()));
+        } catch (IOException | UncheckedIOException | JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
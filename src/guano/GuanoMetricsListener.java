@@ -0,0 +1,55 @@
+package guano;
+
+
+/**
+ * Receives a callback for every file read, metadata block parsed, and file written, eg. to feed
+ * an application's own metrics system. Register with <code>GuanoMetrics.addListener()</code>.
+ *
+ * Callbacks are made synchronously on the thread doing the work, so implementations must be
+ * thread-safe and should return quickly. Exceptions thrown by a callback are logged and otherwise
+ * ignored. All methods do nothing by default.
+ */
+public interface GuanoMetricsListener {
+
+    /**
+     * A file's RIFF chunks have been walked by <code>WaveReader</code>.
+     * @param chunks number of chunks in the file
+     * @param bytesRead bytes actually read, including chunk headers
+     * @param bytesSkipped bytes of chunk data seeked past without being read
+     * @param nanos elapsed time
+     */
+    default void fileRead(int chunks, long bytesRead, long bytesSkipped, long nanos) {
+    }
+
+    /**
+     * A file's RIFF chunks have been walked, with the elapsed time split between walking the chunk
+     * headers and reading the data of the chunks loaded. By default, calls the four-argument
+     * <code>fileRead()</code> with the total.
+     * @param chunks number of chunks in the file
+     * @param bytesRead bytes actually read, including chunk headers
+     * @param bytesSkipped bytes of chunk data seeked past without being read
+     * @param walkNanos time spent walking chunk headers and seeking past unwanted chunks
+     * @param dataNanos time spent reading the data of loaded chunks
+     */
+    default void fileRead(int chunks, long bytesRead, long bytesSkipped, long walkNanos, long dataNanos) {
+        fileRead(chunks, bytesRead, bytesSkipped, walkNanos + dataNanos);
+    }
+
+    /**
+     * A <code>guan</code> chunk has been parsed by <code>GuanoReader</code>.
+     * @param bytes size of the chunk
+     * @param fields number of fields parsed
+     * @param nanos elapsed time
+     */
+    default void metadataParsed(int bytes, int fields, long nanos) {
+    }
+
+    /**
+     * A file has been written by <code>GuanoWaveWriter</code> or <code>GuanoBatchWriter</code>.
+     * @param bytes total size of the file
+     * @param nanos time spent writing, excluding any time between streamed appends
+     */
+    default void fileWritten(long bytes, long nanos) {
+    }
+
+}
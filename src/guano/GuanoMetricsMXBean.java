@@ -0,0 +1,50 @@
+package guano;
+
+
+/**
+ * JMX management interface for the library-wide counters kept by <code>GuanoMetrics</code>.
+ * All totals are cumulative since the JVM started or since the last <code>reset()</code>.
+ */
+public interface GuanoMetricsMXBean {
+
+    long getFilesRead();
+
+    long getChunksRead();
+
+    long getBytesRead();
+
+    long getBytesSkipped();
+
+    /** @return total time spent reading files, the sum of <code>getWalkNanos()</code> and <code>getDataReadNanos()</code> */
+    long getReadNanos();
+
+    /** @return time spent walking chunk headers and seeking past unwanted chunks */
+    long getWalkNanos();
+
+    /** @return time spent reading the data of loaded chunks, eg. <code>fmt_</code>, <code>guan</code>, or <code>data</code> */
+    long getDataReadNanos();
+
+    long getFilesParsed();
+
+    long getFieldsParsed();
+
+    long getMetadataBytesParsed();
+
+    long getParseNanos();
+
+    long getFilesWritten();
+
+    long getBytesWritten();
+
+    long getWriteNanos();
+
+    /** @return files read per second of wall-clock time */
+    double getFilesReadPerSecond();
+
+    /** @return files written per second of wall-clock time */
+    double getFilesWrittenPerSecond();
+
+    /** Zero all counters and restart the rate clock */
+    void reset();
+
+}
@@ -0,0 +1,98 @@
+package guano;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Allocation-free GUANO metadata parser, which scans the UTF-8 bytes of a <code>guan</code>
+ * chunk directly and reports each field to a {@link GuanoVisitor}.
+ *
+ * Each line holds a single <code>Namespace|Field: Value</code> or <code>Field: Value</code> pair.
+ * Blank lines, and malformed lines lacking a colon, are skipped.
+ */
+public final class GuanoParser {
+
+    private GuanoParser() {
+    }
+
+    /**
+     * Parse an entire metadata block.
+     * @return <code>false</code> if the visitor stopped parsing early
+     */
+    public static boolean parse(byte[] data, GuanoVisitor visitor) {
+        return parse(data, 0, data.length, visitor);
+    }
+
+    /**
+     * Parse a range of a buffer holding a metadata block.
+     * @return <code>false</code> if the visitor stopped parsing early
+     */
+    public static boolean parse(byte[] data, int off, int len, GuanoVisitor visitor) {
+        int end = off + len;
+        int pos = off;
+        while (pos < end) {
+            int lineEnd = pos;
+            int colon = -1;
+            int pipe = -1;
+            for (; lineEnd < end; lineEnd++) {
+                byte b = data[lineEnd];
+                if (b == '\n' || b == '\r') break;
+                if (colon < 0) {
+                    if (b == ':') colon = lineEnd;
+                    else if (b == '|' && pipe < 0) pipe = lineEnd;
+                }
+            }
+
+            if (colon >= 0) {
+                int nsStart = pos, nsEnd = pos, fieldStart = pos;
+                if (pipe >= 0) {
+                    nsStart = skipSpace(data, pos, pipe);
+                    nsEnd = trimSpace(data, nsStart, pipe);
+                    fieldStart = pipe + 1;
+                }
+                fieldStart = skipSpace(data, fieldStart, colon);
+                int fieldEnd = trimSpace(data, fieldStart, colon);
+                int valueStart = skipSpace(data, colon + 1, lineEnd);
+                int valueEnd = trimSpace(data, valueStart, lineEnd);
+                if (!visitor.visit(data, nsStart, nsEnd, fieldStart, fieldEnd, valueStart, valueEnd)) return false;
+            }
+            pos = lineEnd + 1;
+        }
+        return true;
+    }
+
+    /** @return index of the first non-whitespace byte in the range, or <code>end</code> */
+    private static int skipSpace(byte[] data, int start, int end) {
+        while (start < end && (data[start] & 0xFF) <= ' ') start++;
+        return start;
+    }
+
+    /** @return index just past the last non-whitespace byte in the range, or <code>start</code> */
+    private static int trimSpace(byte[] data, int start, int end) {
+        while (end > start && (data[end - 1] & 0xFF) <= ' ') end--;
+        return end;
+    }
+
+    /**
+     * Compare a range of bytes to an expected value without decoding it.
+     * @param expected UTF-8 bytes, eg. from {@link #encode(String)}
+     */
+    public static boolean equals(byte[] data, int start, int end, byte[] expected) {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    /** Decode a range of bytes to a String */
+    public static String decode(byte[] data, int start, int end) {
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /** Encode a namespace, fieldname, or value for comparison with {@link #equals(byte[], int, int, byte[])} */
+    public static byte[] encode(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,234 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+
+/**
+ * Selects the files in a corpus whose GUANO metadata satisfies a set of conditions.
+ *
+ * Conditions are added with the <code>where()</code> family of methods, and a file matches
+ * only if every condition is satisfied; a condition on an absent field is never satisfied.
+ * Conditions are evaluated while the <code>guan</code> chunk is being parsed, and parsing
+ * stops as soon as any condition fails, so rejecting a file costs little more than reading
+ * its chunk headers. See the example <code>main()</code> function below for API usage example.
+ *
+ * Once built, a query may be evaluated from multiple threads concurrently.
+ */
+public class GuanoQuery {
+
+    /** A single condition on the value of a single field */
+    private static class Condition {
+        final int index;
+        final String namespace;
+        final String fieldname;
+        final byte[] namespaceBytes;  // UTF-8
+        final byte[] fieldnameBytes;  // UTF-8
+        final Predicate<String> test;
+
+        Condition(int index, String namespace, String fieldname, Predicate<String> test) {
+            this.index = index;
+            this.namespace = namespace;
+            this.fieldname = fieldname;
+            this.namespaceBytes = GuanoParser.encode(namespace);
+            this.fieldnameBytes = GuanoParser.encode(fieldname);
+            this.test = test;
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+
+    /**
+     * Add a condition on the raw String value of a field.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @param test receives the trimmed field value
+     * @return this query
+     */
+    public GuanoQuery where(String namespace, String fieldname, Predicate<String> test) {
+        conditions.add(new Condition(conditions.size(), namespace.trim(), fieldname.trim(), test));
+        return this;
+    }
+
+    /**
+     * Add a condition on the raw String value of a field.
+     * @param fieldname top-level fieldname, or pipe-delimited namespaced fieldname
+     * @param test receives the trimmed field value
+     * @return this query
+     */
+    public GuanoQuery where(String fieldname, Predicate<String> test) {
+        String ns = "";
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
+        }
+        return where(ns, fieldname, test);
+    }
+
+    /**
+     * Add a condition on the raw String value of a field.
+     * @param field top-level field enum
+     * @param test receives the trimmed field value
+     * @return this query
+     */
+    public GuanoQuery where(GuanoField field, Predicate<String> test) {
+        return where("", field.toString(), test);
+    }
+
+    /**
+     * Require that a field have exactly the specified value, eg. <code>Species Auto ID</code>.
+     * @param fieldname top-level fieldname, or pipe-delimited namespaced fieldname
+     * @return this query
+     */
+    public GuanoQuery equalTo(String fieldname, String value) {
+        return where(fieldname, value::equals);
+    }
+
+    /**
+     * Require that a field have exactly the specified value, eg. <code>Species Auto ID</code>.
+     * @return this query
+     */
+    public GuanoQuery equalTo(GuanoField field, String value) {
+        return where(field, value::equals);
+    }
+
+    /**
+     * Require that a numeric field lie within an inclusive range, eg. <code>SB|Avg Duration</code>.
+     * @param fieldname top-level fieldname, or pipe-delimited namespaced fieldname
+     * @return this query
+     */
+    public GuanoQuery between(String fieldname, double min, double max) {
+        return where(fieldname, numericRange(min, max));
+    }
+
+    /**
+     * Require that a numeric field lie within an inclusive range.
+     * @return this query
+     */
+    public GuanoQuery between(GuanoField field, double min, double max) {
+        return where(field, numericRange(min, max));
+    }
+
+    private static Predicate<String> numericRange(final double min, final double max) {
+        return value -> {
+            double d = GuanoReader.parseDouble(value);
+            return d >= min && d <= max;
+        };
+    }
+
+    /**
+     * Require that the <code>Timestamp</code> field lie within a time range.
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @return this query
+     */
+    public GuanoQuery timestampBetween(final OffsetDateTime from, final OffsetDateTime to) {
+        return where(GuanoField.TIMESTAMP, value -> {
+            OffsetDateTime timestamp = GuanoReader.parseTimestamp(value);
+            return timestamp != null && !timestamp.isBefore(from) && timestamp.isBefore(to);
+        });
+    }
+
+    /**
+     * Require that the <code>Loc Position</code> field lie within a bounding box.
+     * @return this query
+     */
+    public GuanoQuery within(final double minLatitude, final double minLongitude,
+                             final double maxLatitude, final double maxLongitude) {
+        return where(GuanoField.LOC_POSITION, value -> {
+            LocPosition position = LocPosition.parse(value);
+            return position != null
+                    && position.getLatitude() >= minLatitude && position.getLatitude() <= maxLatitude
+                    && position.getLongitude() >= minLongitude && position.getLongitude() <= maxLongitude;
+        });
+    }
+
+    /**
+     * Test a single file. Only the chunk headers and the <code>guan</code> chunk are read.
+     * @param file
+     * @return <code>true</code> if the file's metadata satisfies every condition
+     * @throws IOException
+     */
+    public boolean matches(File file) throws IOException {
+        WaveReader reader = new WaveReader(file, Collections.singleton(GuanoReader.GUANO_CHUNK_ID));
+        byte[] guanChunk = reader.getChunk(GuanoReader.GUANO_CHUNK_ID);
+        return guanChunk != null && matches(guanChunk);
+    }
+
+    /**
+     * Test the raw contents of a <code>guan</code> chunk, stopping as soon as any condition fails.
+     * Fieldnames are compared as raw bytes, and only the values of fields with conditions are decoded.
+     * @param guanChunk
+     * @return <code>true</code> if the metadata satisfies every condition
+     */
+    boolean matches(byte[] guanChunk) {
+        final BitSet satisfied = new BitSet(conditions.size());
+        GuanoParser.parse(guanChunk, (data, nsStart, nsEnd, fieldStart, fieldEnd, valueStart, valueEnd) -> {
+            String value = null;
+            for (Condition condition : conditions) {
+                if (!GuanoParser.equals(data, fieldStart, fieldEnd, condition.fieldnameBytes)) continue;
+                if (!GuanoParser.equals(data, nsStart, nsEnd, condition.namespaceBytes)) continue;
+                if (value == null) value = GuanoParser.decode(data, valueStart, valueEnd);
+                if (!condition.test.test(value)) return false;
+                satisfied.set(condition.index);
+            }
+            return satisfied.cardinality() < conditions.size();  // stop once everything is satisfied
+        });
+        return satisfied.cardinality() == conditions.size();
+    }
+
+    /**
+     * Test metadata already held in memory, eg. to filter a large in-memory collection interactively.
+     * @param record
+     * @return <code>true</code> if the metadata satisfies every condition
+     */
+    public boolean matches(GuanoRecord record) {
+        for (Condition condition : conditions) {
+            String value = record.getString(condition.namespace, condition.fieldname);
+            if (value == null || !condition.test.test(value)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find all matching files beneath a directory, testing files concurrently. Files which
+     * cannot be read are silently excluded.
+     * @param root a directory to walk recursively, or a single file
+     * @param scanner used to test files concurrently
+     * @return a lazy stream of matching paths, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<Path> run(Path root, GuanoScanner scanner) throws IOException {
+        return scanner.scan(root, path -> matches(path.toFile()))
+                .filter(result -> result.isSuccess() && result.getValue())
+                .map(GuanoScanner.Result::getPath);
+    }
+
+    /** Example main function which lists all recordings of a species within a date range */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("usage: java guano.GuanoQuery DIRECTORY SPECIES FROM_TIMESTAMP TO_TIMESTAMP");
+            System.exit(2);
+        }
+
+        GuanoQuery query = new GuanoQuery()
+                .equalTo(GuanoField.SPECIES_AUTO_ID, args[1])
+                .timestampBetween(OffsetDateTime.parse(args[2]), OffsetDateTime.parse(args[3]));
+
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<Path> matches = query.run(Paths.get(args[0]), scanner)) {
+            matches.forEach(System.out::println);
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -1,6 +1,11 @@
 package guano;
 
 import java.io.*;
+import java.nio.channels.SeekableByteChannel;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 
@@ -22,6 +27,18 @@ public class GuanoReader {
     /** Stateful mapping of namespace to field key->value mapping */
     private Map<String, Map<String, String>> namespaceFields = new HashMap<>();
 
+    /** Lazily parsed numeric values of top-level fields, indexed by GuanoField ordinal */
+    private double[] numericValues;
+
+    /** Bitmask of GuanoField ordinals whose numeric value has been parsed */
+    private long numericParsed;
+
+    /** Lazily parsed structured values of top-level fields, indexed by GuanoField ordinal */
+    private Object[] parsedValues;
+
+    /** Marker for a cached field value which is absent or malformed */
+    private static final Object NOT_PARSEABLE = new Object();
+
     /**
      * Create an instance of a GUANO Reader and parse the underlying file.
      * @param filename
@@ -41,40 +58,75 @@ public class GuanoReader {
     }
 
     /**
-     * Create an instance of a GUANO Reader and parse the underlying file.
+     * Create an instance of a GUANO Reader and parse the underlying file. Only the RIFF chunk
+     * headers and the <code>guan</code> chunk are read; the audio data is skipped over.
      * @param fis
      * @throws IOException
      */
     public GuanoReader(FileInputStream fis) throws IOException {
-        WaveReader reader = new WaveReader(fis);
-        if (reader.hasChunk(GUANO_CHUNK_ID)) {
-            String data = new String(reader.getChunk(GUANO_CHUNK_ID), "UTF-8");
-            parse(data);
+        this(new WaveReader(fis, Collections.singleton(GUANO_CHUNK_ID)));
+    }
+
+    /**
+     * Create an instance of a GUANO Reader and parse a file read from any stream, eg. an archive
+     * entry. The audio data is skipped over without being buffered, and the stream is left open.
+     * @param in a stream positioned at the start of the file
+     * @throws IOException
+     */
+    public GuanoReader(InputStream in) throws IOException {
+        this(new WaveReader(in, Collections.singleton(GUANO_CHUNK_ID)));
+    }
+
+    /**
+     * Create an instance of a GUANO Reader and parse a file read from a seekable channel, which is left open.
+     * @param channel
+     * @throws IOException
+     */
+    public GuanoReader(SeekableByteChannel channel) throws IOException {
+        this(new WaveReader(channel, Collections.singleton(GUANO_CHUNK_ID)));
+    }
+
+    /**
+     * Create an instance of a GUANO Reader from a file's already-read chunks.
+     * @param reader a reader which loaded the <code>guan</code> chunk, if present
+     */
+    public GuanoReader(WaveReader reader) {
+        if (reader.getChunk(GUANO_CHUNK_ID) != null) {
+            parse(reader.getChunk(GUANO_CHUNK_ID));
         }
     }
 
+    /**
+     * Create an instance of a GUANO Reader from the raw contents of a <code>guan</code> chunk.
+     * @param guanChunk
+     * @throws IOException
+     */
+    GuanoReader(byte[] guanChunk) {
+        parse(guanChunk);
+    }
+
+    /**
+     * Create an empty instance of a GUANO Reader, to be populated with <code>insert()</code>.
+     */
+    GuanoReader() {
+    }
+
     /** Parse the bulk GUANO metadata structure */
-    private void parse(String data) throws IOException {
-        BufferedReader br = new BufferedReader(new StringReader(data));
-        String line;
-        while ((line = br.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-
-            String[] toks = line.split(":", 2);
-            String ns = "";
-            String field = toks[0];
-            String val = toks[1];
-            if (field.contains("|")) {
-                toks = field.split("\\|", 2);
-                ns = toks[0];
-                field = toks[1];
-            }
-            insert(ns, field, val);
-        }
+    private void parse(byte[] data) {
+        long start = System.nanoTime();
+        final int[] fields = new int[1];
+        GuanoParser.parse(data, (buf, nsStart, nsEnd, fieldStart, fieldEnd, valueStart, valueEnd) -> {
+            insert(GuanoParser.decode(buf, nsStart, nsEnd),
+                   GuanoParser.decode(buf, fieldStart, fieldEnd),
+                   GuanoParser.decode(buf, valueStart, valueEnd));
+            fields[0]++;
+            return true;
+        });
+        GuanoMetrics.recordParse(data.length, fields[0], System.nanoTime() - start);
     }
 
     /** Populate our stateful data structures as we parse the underlying file */
-    private void insert(String ns, String field, String val) {
+    void insert(String ns, String field, String val) {
         ns = ns.trim(); field = field.trim(); val = val.trim();
         //System.out.println(String.format("%s\t%s\t%s", ns, field, val));
 
@@ -130,10 +182,10 @@ public class GuanoReader {
      */
     public String getString(String fieldname) {
         String ns = "";
-        if (fieldname.contains("\\|")) {
-            String[] toks = fieldname.split("\\|", 2);
-            ns = toks[0];
-            fieldname = toks[1];
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
         }
         return getString(ns, fieldname);
     }
@@ -142,11 +194,12 @@ public class GuanoReader {
      * Get a single field's String value.
      * @param namespace
      * @param fieldname
-     * @return
+     * @return the value, or <code>null</code> if the field is not present
      */
     public String getString(String namespace, String fieldname) {
         namespace = namespace.trim(); fieldname = fieldname.trim();
-        return namespaceFields.get(namespace).get(fieldname);
+        Map<String, String> fields = namespaceFields.get(namespace);
+        return fields != null ? fields.get(fieldname) : null;
     }
 
     /**
@@ -205,6 +258,135 @@ public class GuanoReader {
         return Float.parseFloat(getString(namespace, fieldname));
     }
 
+    /**
+     * Get a single field's value as a primitive double. The value is parsed only once.
+     * @param field a top-level field
+     * @return the value, or <code>NaN</code> if the field is absent or not numeric
+     */
+    public double getDouble(GuanoField field) {
+        int i = field.ordinal();
+        if ((numericParsed & (1L << i)) == 0) {
+            if (numericValues == null) numericValues = new double[GuanoField.values().length];
+            numericValues[i] = parseDouble(getString(field));
+            numericParsed |= 1L << i;
+        }
+        return numericValues[i];
+    }
+
+    /**
+     * Get a single field's value as a primitive double.
+     * @param fieldname a top-level fieldname, or pipe-separated namespace and fieldname
+     * @return the value, or <code>NaN</code> if the field is absent or not numeric
+     */
+    public double getDouble(String fieldname) {
+        return parseDouble(getString(fieldname));
+    }
+
+    /**
+     * Get a single field's value as a primitive double.
+     * @param namespace
+     * @param fieldname
+     * @return the value, or <code>NaN</code> if the field is absent or not numeric
+     */
+    public double getDouble(String namespace, String fieldname) {
+        return parseDouble(getString(namespace, fieldname));
+    }
+
+    /**
+     * Get a single field's value as a primitive int. The value is parsed only once.
+     * @param field a top-level field
+     * @param defaultValue value to return if the field is absent or not numeric
+     * @return the value, truncated if it has a fractional part
+     */
+    public int getIntOrDefault(GuanoField field, int defaultValue) {
+        double value = getDouble(field);
+        return Double.isNaN(value) ? defaultValue : (int) value;
+    }
+
+    /**
+     * Get a single field's value as a primitive int.
+     * @param fieldname a top-level fieldname, or pipe-separated namespace and fieldname
+     * @param defaultValue value to return if the field is absent or not numeric
+     * @return the value, truncated if it has a fractional part
+     */
+    public int getIntOrDefault(String fieldname, int defaultValue) {
+        double value = getDouble(fieldname);
+        return Double.isNaN(value) ? defaultValue : (int) value;
+    }
+
+    /**
+     * Get a single field's value as a primitive int.
+     * @param namespace
+     * @param fieldname
+     * @param defaultValue value to return if the field is absent or not numeric
+     * @return the value, truncated if it has a fractional part
+     */
+    public int getIntOrDefault(String namespace, String fieldname, int defaultValue) {
+        double value = getDouble(namespace, fieldname);
+        return Double.isNaN(value) ? defaultValue : (int) value;
+    }
+
+    /**
+     * Get the <code>Timestamp</code> field. The value is parsed only once. Timestamps recorded
+     * without a UTC offset are in unknown local time, and are returned as if they were UTC.
+     * @return the timestamp, or <code>null</code> if absent or malformed
+     */
+    public OffsetDateTime getTimestamp() {
+        int i = GuanoField.TIMESTAMP.ordinal();
+        if (parsedValues == null) parsedValues = new Object[GuanoField.values().length];
+        if (parsedValues[i] == null) {
+            OffsetDateTime timestamp = parseTimestamp(getString(GuanoField.TIMESTAMP));
+            parsedValues[i] = timestamp != null ? timestamp : NOT_PARSEABLE;
+        }
+        return parsedValues[i] != NOT_PARSEABLE ? (OffsetDateTime) parsedValues[i] : null;
+    }
+
+    /**
+     * Get the <code>Loc Position</code> field. The value is parsed only once.
+     * @return the position, or <code>null</code> if absent or malformed
+     */
+    public LocPosition getLocPosition() {
+        int i = GuanoField.LOC_POSITION.ordinal();
+        if (parsedValues == null) parsedValues = new Object[GuanoField.values().length];
+        if (parsedValues[i] == null) {
+            String value = getString(GuanoField.LOC_POSITION);
+            LocPosition position = value != null ? LocPosition.parse(value) : null;
+            parsedValues[i] = position != null ? position : NOT_PARSEABLE;
+        }
+        return parsedValues[i] != NOT_PARSEABLE ? (LocPosition) parsedValues[i] : null;
+    }
+
+    static double parseDouble(String value) {
+        if (value == null) return Double.NaN;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    static OffsetDateTime parseTimestamp(String value) {
+        if (value == null) return null;
+        value = isoTimestamp(value);
+        try {
+            return OffsetDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).atOffset(ZoneOffset.UTC);
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+
+    /** A timestamp in strict ISO 8601 form, replacing the space which GUANO allows between date and time */
+    static String isoTimestamp(String value) {
+        if (value.length() > 10 && value.charAt(10) == ' ') {
+            value = value.substring(0, 10) + 'T' + value.substring(11);
+        }
+        return value;
+    }
+
     /**
      * Test application which simply prints metadata fields.
      * @param args
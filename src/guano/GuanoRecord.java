@@ -0,0 +1,352 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Compact, immutable GUANO metadata, for holding the metadata of millions of files in memory at once.
+ *
+ * Where <code>GuanoReader</code> keeps several hash maps per file, each with its own copies of every
+ * namespace and fieldname, a record holds just three arrays: the UTF-8 bytes of all its values packed
+ * end to end, the offsets at which each value ends, and references to its namespaced fieldnames, which
+ * are interned in a single dictionary shared by all records. Top-level fields known to
+ * <code>GuanoField</code> are found by ordinal through a bitmask, and all other fields by binary search
+ * of their sorted keys, so lookups allocate nothing but the returned String.
+ *
+ * Records are deeply immutable, and so may be shared freely between threads without locking.
+ */
+public final class GuanoRecord {
+
+    /**
+     * Receives each field of a record.
+     */
+    public interface FieldConsumer {
+        void accept(String namespace, String fieldname, String value);
+    }
+
+    /**
+     * A namespace and fieldname pair. Instances are interned, so each pair is held in memory only once.
+     */
+    static final class FieldKey implements Comparable<FieldKey> {
+        final String namespace;
+        final String fieldname;
+        final GuanoField field;  // null unless a top-level GuanoField
+
+        private FieldKey(String namespace, String fieldname, GuanoField field) {
+            this.namespace = namespace;
+            this.fieldname = fieldname;
+            this.field = field;
+        }
+
+        int compareTo(String namespace, String fieldname) {
+            int c = this.namespace.compareTo(namespace);
+            return c != 0 ? c : this.fieldname.compareTo(fieldname);
+        }
+
+        @Override
+        public int compareTo(FieldKey other) {
+            return compareTo(other.namespace, other.fieldname);
+        }
+
+        public String toString() {
+            return namespace.isEmpty() ? fieldname : namespace + "|" + fieldname;
+        }
+    }
+
+    /** The interned fieldnames of a single namespace */
+    private static final class Namespace {
+        final String name;
+        final ConcurrentMap<String, FieldKey> fields = new ConcurrentHashMap<>();
+
+        Namespace(String name) {
+            this.name = name;
+        }
+    }
+
+    /** Shared dictionary of all namespace and fieldname pairs seen */
+    private static final ConcurrentMap<String, Namespace> DICTIONARY = new ConcurrentHashMap<>();
+
+    private static final GuanoField[] FIELDS = GuanoField.values();
+
+    /** Interned top-level fields, including all those known to <code>GuanoField</code> */
+    private static final Namespace TOP_LEVEL = new Namespace("");
+
+    static {
+        for (GuanoField field : FIELDS) {
+            TOP_LEVEL.fields.put(field.getName(), new FieldKey("", field.getName(), field));
+        }
+        DICTIONARY.put("", TOP_LEVEL);
+    }
+
+    private static final GuanoRecord EMPTY = new GuanoRecord(0L, new FieldKey[0], new byte[0], new int[0]);
+
+    /** Bitmask of GuanoField ordinals present */
+    private final long known;
+
+    /** Keys of all other fields, in sorted order */
+    private final FieldKey[] custom;
+
+    /** UTF-8 bytes of all values: known fields in ordinal order, then other fields in key order */
+    private final byte[] values;
+
+    /** Offset just past the end of each value within <code>values</code> */
+    private final int[] ends;
+
+    private GuanoRecord(long known, FieldKey[] custom, byte[] values, int[] ends) {
+        this.known = known;
+        this.custom = custom;
+        this.values = values;
+        this.ends = ends;
+    }
+
+    /** Intern a namespace and fieldname pair in the shared dictionary */
+    static FieldKey intern(String namespace, String fieldname) {
+        Namespace ns = DICTIONARY.get(namespace);
+        if (ns == null) {
+            Namespace created = new Namespace(namespace);
+            ns = DICTIONARY.putIfAbsent(namespace, created);
+            if (ns == null) ns = created;
+        }
+        FieldKey key = ns.fields.get(fieldname);
+        if (key == null) {
+            FieldKey created = new FieldKey(ns.name, fieldname, null);
+            key = ns.fields.putIfAbsent(fieldname, created);
+            if (key == null) key = created;
+        }
+        return key;
+    }
+
+    /**
+     * Read the GUANO metadata of a file. Only the RIFF chunk headers and the <code>guan</code> chunk are read.
+     * @param path
+     * @return the record, which is empty if the file has no <code>guan</code> chunk
+     * @throws IOException
+     */
+    public static GuanoRecord read(Path path) throws IOException {
+        return of(new WaveReader(path.toFile(), Collections.singleton(GuanoReader.GUANO_CHUNK_ID)));
+    }
+
+    /**
+     * Read the GUANO metadata of a file.
+     * @param file
+     * @throws IOException
+     */
+    public static GuanoRecord read(File file) throws IOException {
+        return read(file.toPath());
+    }
+
+    /**
+     * Convert already-parsed metadata.
+     * @param reader
+     */
+    public static GuanoRecord of(GuanoReader reader) {
+        Builder builder = new Builder();
+        for (String ns : reader.getNamespaces()) {
+            for (Map.Entry<String, String> field : reader.getFields(ns).entrySet()) {
+                builder.put(ns, field.getKey(), field.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Convert a file's already-read chunks.
+     * @param reader a reader which loaded the <code>guan</code> chunk, if present
+     */
+    public static GuanoRecord of(WaveReader reader) {
+        byte[] guanChunk = reader.getChunk(GuanoReader.GUANO_CHUNK_ID);
+        return guanChunk != null ? parse(guanChunk) : EMPTY;
+    }
+
+    /**
+     * Parse the raw contents of a <code>guan</code> chunk directly into a record.
+     * @param guanChunk
+     */
+    static GuanoRecord parse(byte[] guanChunk) {
+        final Builder builder = new Builder();
+        GuanoParser.parse(guanChunk, (data, nsStart, nsEnd, fieldStart, fieldEnd, valueStart, valueEnd) -> {
+            builder.put(GuanoParser.decode(data, nsStart, nsEnd), GuanoParser.decode(data, fieldStart, fieldEnd),
+                        GuanoParser.decode(data, valueStart, valueEnd));
+            return true;
+        });
+        return builder.build();
+    }
+
+    /** Collects fields in a sorted map, where later values replace earlier ones, then packs them */
+    private static class Builder {
+        private final SortedMap<FieldKey, String> fields = new TreeMap<>();
+
+        void put(String namespace, String fieldname, String value) {
+            fields.put(intern(namespace.trim(), fieldname.trim()), value.trim());
+        }
+
+        GuanoRecord build() {
+            if (fields.isEmpty()) return EMPTY;
+            long known = 0;
+            List<FieldKey> custom = new ArrayList<>();
+            for (FieldKey key : fields.keySet()) {
+                if (key.field != null) {
+                    known |= 1L << key.field.ordinal();
+                } else {
+                    custom.add(key);
+                }
+            }
+
+            // known fields are ordered by ordinal, which isn't necessarily alphabetical
+            String[] ordered = new String[fields.size()];
+            int i = 0;
+            for (GuanoField field : FIELDS) {
+                if ((known & (1L << field.ordinal())) != 0) {
+                    ordered[i++] = fields.get(intern("", field.getName()));
+                }
+            }
+            for (FieldKey key : custom) {
+                ordered[i++] = fields.get(key);
+            }
+
+            byte[][] encoded = new byte[ordered.length][];
+            int total = 0;
+            for (i = 0; i < ordered.length; i++) {
+                encoded[i] = ordered[i].getBytes(StandardCharsets.UTF_8);
+                total += encoded[i].length;
+            }
+            byte[] values = new byte[total];
+            int[] ends = new int[ordered.length];
+            for (i = 0, total = 0; i < encoded.length; i++) {
+                System.arraycopy(encoded[i], 0, values, total, encoded[i].length);
+                total += encoded[i].length;
+                ends[i] = total;
+            }
+            return new GuanoRecord(known, custom.toArray(new FieldKey[0]), values, ends);
+        }
+    }
+
+    /** Decode the value at the specified index */
+    private String value(int index) {
+        int start = index > 0 ? ends[index - 1] : 0;
+        return new String(values, start, ends[index] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get a single field's String value.
+     * @param field a top-level field
+     * @return the value, or <code>null</code> if the field is not present
+     */
+    public String getString(GuanoField field) {
+        long bit = 1L << field.ordinal();
+        if ((known & bit) == 0) return null;
+        return value(Long.bitCount(known & (bit - 1)));
+    }
+
+    /**
+     * Get a single field's String value.
+     * @param fieldname a top-level fieldname, or pipe-separated namespace and fieldname
+     * @return the value, or <code>null</code> if the field is not present
+     */
+    public String getString(String fieldname) {
+        String ns = "";
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
+        }
+        return getString(ns, fieldname);
+    }
+
+    /**
+     * Get a single field's String value.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @return the value, or <code>null</code> if the field is not present
+     */
+    public String getString(String namespace, String fieldname) {
+        namespace = namespace.trim(); fieldname = fieldname.trim();
+        if (namespace.isEmpty()) {
+            FieldKey key = TOP_LEVEL.fields.get(fieldname);
+            if (key != null && key.field != null) return getString(key.field);
+        }
+        int lo = 0, hi = custom.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = custom[mid].compareTo(namespace, fieldname);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return value(Long.bitCount(known) + mid);
+        }
+        return null;
+    }
+
+    /**
+     * Get a single field's value as a primitive double.
+     * @param field a top-level field
+     * @return the value, or <code>NaN</code> if the field is absent or not numeric
+     */
+    public double getDouble(GuanoField field) {
+        return GuanoReader.parseDouble(getString(field));
+    }
+
+    /**
+     * Get a single field's value as a primitive double.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     * @return the value, or <code>NaN</code> if the field is absent or not numeric
+     */
+    public double getDouble(String namespace, String fieldname) {
+        return GuanoReader.parseDouble(getString(namespace, fieldname));
+    }
+
+    /** @return number of fields present */
+    public int size() {
+        return ends.length;
+    }
+
+    public boolean isEmpty() {
+        return ends.length == 0;
+    }
+
+    /**
+     * Visit every field: top-level <code>GuanoField</code> fields first, then all others
+     * sorted by namespace and fieldname.
+     */
+    public void forEach(FieldConsumer consumer) {
+        int i = 0;
+        for (GuanoField field : FIELDS) {
+            if ((known & (1L << field.ordinal())) != 0) {
+                consumer.accept("", field.getName(), value(i++));
+            }
+        }
+        for (FieldKey key : custom) {
+            consumer.accept(key.namespace, key.fieldname, value(i++));
+        }
+    }
+
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        forEach((ns, field, value) -> {
+            if (!ns.isEmpty()) sb.append(ns).append('|');
+            sb.append(field).append(": ").append(value).append('\n');
+        });
+        return sb.toString();
+    }
+
+    /** Example main function which prints the metadata of a file */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoRecord WAVFILE");
+            System.exit(2);
+        }
+
+        try {
+            System.out.print(read(new File(args[0])));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,422 @@
+package guano;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Parses GUANO metadata from many files concurrently, eg. an entire directory tree.
+ *
+ * Files are processed by a bounded pool of worker threads, and results are returned lazily
+ * as a <code>Stream</code> in order of completion, or optionally in the order the files were
+ * listed. At most a small multiple of the pool size is in flight at once, so arbitrarily large
+ * trees may be scanned in constant memory. Failures, including directories which can't be listed,
+ * are reported per-file rather than aborting the scan. See the example <code>main()</code>
+ * function below for API usage example.
+ */
+public class GuanoScanner implements AutoCloseable {
+
+    /** Number of pending files allowed per worker thread */
+    private static final int QUEUE_DEPTH = 4;
+
+    /** Number of listed files the directory walk may run ahead of the workers */
+    private static final int WALK_DEPTH = 256;
+
+    /**
+     * A unit of work performed on each scanned file.
+     * @param <T> the result type
+     */
+    public interface FileTask<T> {
+        T process(Path path) throws Exception;
+    }
+
+    /**
+     * The outcome of processing a single file: either a value, or the error which prevented it.
+     * @param <T> the result type
+     */
+    public static class Result<T> {
+        private final Path path;
+        private final T value;
+        private final Exception error;
+
+        Result(Path path, T value, Exception error) {
+            this.path = path;
+            this.value = value;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /** @return the result value, or <code>null</code> on failure */
+        public T getValue() {
+            return value;
+        }
+
+        /** @return the error which occurred while processing this file, or <code>null</code> on success */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String toString() {
+            return String.format("%s: %s", path, isSuccess() ? value : error);
+        }
+    }
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /**
+     * Create a scanner with one worker thread per available processor.
+     */
+    public GuanoScanner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a scanner.
+     * @param parallelism maximum number of files processed concurrently
+     */
+    public GuanoScanner(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "guano-scanner-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Parse the GUANO metadata of every .WAV file beneath a directory.
+     * @param root a directory to walk recursively, or a single file
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<Result<GuanoReader>> scan(Path root) throws IOException {
+        return scan(root, path -> new GuanoReader(path.toFile()));
+    }
+
+    /**
+     * Perform a task on every .WAV file beneath a directory.
+     * @param root a directory to walk recursively, or a single file
+     * @param task the work to perform on each file
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public <T> Stream<Result<T>> scan(Path root, FileTask<T> task) throws IOException {
+        return scan(root, null, task);
+    }
+
+    /**
+     * Perform a task on every .WAV file beneath a directory, except those beneath an excluded
+     * directory, eg. one to which the task itself writes.
+     * @param excluded an absolute, normalized directory path, or <code>null</code>
+     */
+    <T> Stream<Result<T>> scan(Path root, Path excluded, FileTask<T> task) throws IOException {
+        WaveFileWalker walker = new WaveFileWalker(root, excluded);
+        return stream(new ResultIterator<>(walker, task, false), false).onClose(walker::close);
+    }
+
+    /**
+     * Perform a task on each of the specified files.
+     * @param paths files to process, which are consumed lazily as workers become available
+     * @param task the work to perform on each file
+     * @return a lazy stream of per-file results in order of completion
+     */
+    public <T> Stream<Result<T>> map(Iterator<Path> paths, FileTask<T> task) {
+        return stream(new ResultIterator<>(listed(paths), task, false), false);
+    }
+
+    /**
+     * Perform a task on every .WAV file beneath a directory, returning results in the order
+     * the files were listed. A slow file holds back the results behind it, but never more
+     * than the usual number of files are in flight.
+     * @param root a directory to walk recursively, or a single file
+     * @param task the work to perform on each file
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public <T> Stream<Result<T>> scanOrdered(Path root, FileTask<T> task) throws IOException {
+        WaveFileWalker walker = new WaveFileWalker(root, null);
+        return stream(new ResultIterator<>(walker, task, true), true).onClose(walker::close);
+    }
+
+    /**
+     * Perform a task on each of the specified files, returning results in the same order as the files.
+     * @param paths files to process, which are consumed lazily as workers become available
+     * @param task the work to perform on each file
+     * @return a lazy stream of per-file results in order of the specified files
+     */
+    public <T> Stream<Result<T>> mapOrdered(Iterator<Path> paths, FileTask<T> task) {
+        return stream(new ResultIterator<>(listed(paths), task, true), true);
+    }
+
+    /**
+     * Perform a task on each listed file, in order of completion. Entries which failed to be
+     * listed skip the task, and are returned as failures.
+     */
+    <T> Stream<Result<T>> mapEntries(Iterator<Result<Path>> entries, FileTask<T> task) {
+        return stream(new ResultIterator<>(entries, task, false), false);
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> it, boolean ordered) {
+        int characteristics = ordered ? Spliterator.NONNULL | Spliterator.ORDERED : Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, characteristics), false);
+    }
+
+    /** Adapt a plain iterator of paths to the listing entries consumed by <code>ResultIterator</code> */
+    private static Iterator<Result<Path>> listed(final Iterator<Path> paths) {
+        return new Iterator<Result<Path>>() {
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            public Result<Path> next() {
+                Path path = paths.next();
+                return new Result<>(path, path, null);
+            }
+        };
+    }
+
+    /**
+     * List all .WAV files beneath a directory.
+     * @param root a directory to walk recursively, or a single file
+     * @return a lazy stream of paths, which should be closed when done; a directory which can't be
+     *         listed ends it with an <code>UncheckedIOException</code>
+     * @throws IOException
+     */
+    public static Stream<Path> listWaveFiles(Path root) throws IOException {
+        return listEntries(root).map(entry -> {
+            if (!entry.isSuccess()) throw new UncheckedIOException((IOException) entry.getError());
+            return entry.getPath();
+        });
+    }
+
+    /**
+     * List all .WAV files beneath a directory, along with any files or directories which couldn't be read.
+     * @param root a directory to walk recursively, or a single file
+     * @return a lazy stream of listed files, and failures carrying the unreadable path and its error,
+     *         which should be closed when done
+     * @throws IOException
+     */
+    static Stream<Result<Path>> listEntries(Path root) throws IOException {
+        WaveFileWalker walker = new WaveFileWalker(root, null);
+        return stream(walker, true).onClose(walker::close);
+    }
+
+    static boolean isWaveFile(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".wav") && Files.isRegularFile(path);
+    }
+
+    /** Process a single file, capturing any failure in its result */
+    static <T> Result<T> process(Path path, FileTask<T> task) {
+        try {
+            return new Result<>(path, task.process(path), null);
+        } catch (Exception e) {
+            return new Result<>(path, null, e);
+        }
+    }
+
+    /**
+     * Stop all worker threads. Any scan still in progress is abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lists the .WAV files beneath a directory with <code>Files.walkFileTree()</code> on a background thread,
+     * handing each over through a bounded queue, so that the walk runs only a little ahead of its consumer.
+     * Each entry is either a listed file, or a file or directory which couldn't be read, along with its error.
+     */
+    private static class WaveFileWalker implements Iterator<Result<Path>>, AutoCloseable {
+        private static final Result<Path> END = new Result<>(null, null, null);
+
+        private final BlockingQueue<Result<Path>> queue = new ArrayBlockingQueue<>(WALK_DEPTH);
+        private final Thread thread;
+        private volatile boolean closed;
+        private Result<Path> next;
+
+        WaveFileWalker(final Path root, final Path excluded) throws IOException {
+            if (!Files.exists(root)) throw new NoSuchFileException(root.toString());
+            thread = new Thread(() -> {
+                try {
+                    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            if (excluded != null && dir.toAbsolutePath().normalize().equals(excluded)) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            return proceed();
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            return isWaveFile(file) ? put(new Result<>(file, file, null)) : proceed();
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            return put(new Result<>(file, null, e));
+                        }
+
+                        @Override
+                        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                            return e != null ? put(new Result<>(dir, null, e)) : proceed();
+                        }
+                    });
+                } catch (IOException e) {
+                    put(new Result<>(root, null, e));  // the visitor itself never throws, so this is unexpected
+                }
+                put(END);
+            }, "guano-scanner-walk");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private FileVisitResult put(Result<Path> entry) {
+            try {
+                if (!closed) queue.put(entry);
+            } catch (InterruptedException e) {
+                closed = true;
+            }
+            return proceed();
+        }
+
+        private FileVisitResult proceed() {
+            return closed ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while listing files");
+                }
+            }
+            return next != END;
+        }
+
+        @Override
+        public Result<Path> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Result<Path> entry = next;
+            next = null;
+            return entry;
+        }
+
+        /** Stop the walk, if it hasn't already finished */
+        @Override
+        public void close() {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Feeds paths to the workers as results are consumed, keeping a bounded number in flight.
+     * Results are taken either as they complete, or from the head of a queue of pending futures.
+     * Files which couldn't be listed skip the task, and fail with the listing's error.
+     */
+    private class ResultIterator<T> implements Iterator<Result<T>> {
+        private final Iterator<Result<Path>> paths;
+        private final FileTask<T> task;
+        private final boolean ordered;
+        private final CompletionService<Result<T>> completions = new ExecutorCompletionService<>(executor);
+        private final Queue<Future<Result<T>>> pending = new ArrayDeque<>();  // only when ordered
+        private int inFlight = 0;
+
+        ResultIterator(Iterator<Result<Path>> paths, FileTask<T> task, boolean ordered) {
+            this.paths = paths;
+            this.task = task;
+            this.ordered = ordered;
+        }
+
+        private void fill() {
+            while (inFlight < parallelism * QUEUE_DEPTH && paths.hasNext()) {
+                final Result<Path> entry = paths.next();
+                Callable<Result<T>> job = entry.isSuccess() ? () -> process(entry.getPath(), task)
+                        : () -> new Result<>(entry.getPath(), null, entry.getError());
+                if (ordered) {
+                    pending.add(executor.submit(job));
+                } else {
+                    completions.submit(job);
+                }
+                inFlight++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return inFlight > 0;
+        }
+
+        @Override
+        public Result<T> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                Result<T> result = (ordered ? pending.remove() : completions.take()).get();
+                inFlight--;
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while scanning");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());  // process() never throws
+            }
+        }
+    }
+
+    /** Example main function which prints the number of namespaces found in each file */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.GuanoScanner DIRECTORY");
+            System.exit(2);
+        }
+
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<Result<GuanoReader>> results = scanner.scan(Paths.get(args[0]))) {
+            Iterator<Result<GuanoReader>> it = results.iterator();
+            while (it.hasNext()) {
+                Result<GuanoReader> result = it.next();
+                if (result.isSuccess()) {
+                    System.out.println(String.format("%s\t%d namespaces", result.getPath(), result.getValue().getNamespaces().size()));
+                } else {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
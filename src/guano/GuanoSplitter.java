@@ -0,0 +1,226 @@
+package guano;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * Splits long recordings into fixed-length segments, each a complete .WAV file with its own GUANO metadata.
+ *
+ * Audio data is never decoded: each segment's range of the source <code>data</code> chunk is copied
+ * straight into the new file with <code>FileChannel.transferTo()</code>, which the OS may perform
+ * entirely in the kernel, and the source <code>fmt_</code> chunk is copied verbatim, so any sample
+ * format is supported. Each segment inherits every GUANO field of its source, except that
+ * <code>Timestamp</code> is offset to the start of the segment (or dropped, if it cannot be parsed)
+ * and <code>Length</code> is the segment's own duration. Any other chunks of the source are not
+ * copied. See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoSplitter {
+
+    private final double segmentSeconds;
+
+    /**
+     * Create a splitter.
+     * @param segmentSeconds length of each segment; the final segment of a file may be shorter
+     */
+    public GuanoSplitter(double segmentSeconds) {
+        if (!(segmentSeconds > 0)) throw new IllegalArgumentException("segmentSeconds must be positive");
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    /**
+     * Split a single file. Segments are named after the source file with a sequence number,
+     * eg. <code>night1_000.wav</code>, <code>night1_001.wav</code>, and existing files are replaced.
+     * @param source
+     * @param outputDir directory in which to write the segments, which is created if necessary
+     * @return paths of the segments written, in order
+     * @throws IOException
+     */
+    public List<Path> split(Path source, Path outputDir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            WaveReader reader = new WaveReader(in, WaveReader.METADATA_CHUNK_IDS);
+            byte[] fmtChunk = reader.getChunk(WaveReader.FMT_CHUNK_ID);
+            if (fmtChunk == null) throw new IOException("fmt chunk not found");
+            if (!reader.hasChunk(WaveReader.DATA_CHUNK_ID)) throw new IOException("data chunk not found");
+            WaveFormat format = WaveFormat.parse(fmtChunk);
+            byte[] guanChunk = reader.getChunk(GuanoReader.GUANO_CHUNK_ID);
+            GuanoReader metadata = guanChunk != null ? new GuanoReader(guanChunk) : new GuanoReader();
+
+            long dataOffset = reader.getChunkOffset(WaveReader.DATA_CHUNK_ID);
+            long frameCount = reader.getChunkSize(WaveReader.DATA_CHUNK_ID) / format.getBlockAlign();
+            long segmentFrames = Math.max(1, Math.round(segmentSeconds * format.getSampleRate()));
+            if (segmentFrames * format.getBlockAlign() > 0xFFFFFFFFL - 1024 * 1024) {
+                throw new IllegalArgumentException("Segments too long for plain .WAV files: " + segmentSeconds + "s");
+            }
+
+            Files.createDirectories(outputDir);
+            String basename = source.getFileName().toString().replaceFirst("(?i)\\.wav$", "");
+            String timestamp = metadata.getString(GuanoField.TIMESTAMP);
+
+            for (long start = 0, i = 0; start < frameCount; start += segmentFrames, i++) {
+                long frames = Math.min(segmentFrames, frameCount - start);
+                Map<String, Map<String, String>> fields = copyFields(metadata);
+                Map<String, String> topLevel = fields.get("");
+                topLevel.remove(GuanoField.TIMESTAMP.toString());
+                if (timestamp != null) {
+                    String offset = offsetTimestamp(timestamp, frameOffset(start, format.getSampleRate()));
+                    if (offset != null) topLevel.put(GuanoField.TIMESTAMP.toString(), offset);
+                }
+                topLevel.put(GuanoField.LENGTH.toString(), Float.toString((float) frames / format.getSampleRate()));
+
+                Path segment = outputDir.resolve(String.format("%s_%03d.wav", basename, i));
+                writeSegment(in, segment, fmtChunk, dataOffset + start * format.getBlockAlign(),
+                        frames * format.getBlockAlign(), fields);
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Split every .WAV file beneath a directory concurrently. The directory structure of the
+     * source tree is reproduced beneath the output directory. An output directory within the
+     * source tree is skipped, so that segments are never split again.
+     * @param root a directory to walk recursively, or a single file
+     * @param outputDir a directory other than <code>root</code> itself
+     * @param scanner used to split files concurrently
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<GuanoScanner.Result<List<Path>>> splitAll(final Path root, final Path outputDir,
+                                                           GuanoScanner scanner) throws IOException {
+        Path excluded = outputDir.toAbsolutePath().normalize();
+        if (excluded.equals(root.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Output directory must differ from the source directory: " + outputDir);
+        }
+        return scanner.scan(root, excluded, path -> {
+            Path relative = root.relativize(path).getParent();
+            return split(path, relative != null ? outputDir.resolve(relative) : outputDir);
+        });
+    }
+
+    /** Deep copy of a file's metadata as a mutable namespace to field key->value mapping */
+    private static Map<String, Map<String, String>> copyFields(GuanoReader metadata) {
+        Map<String, Map<String, String>> fields = new LinkedHashMap<>();
+        fields.put("", new LinkedHashMap<String, String>());
+        for (String ns : metadata.getNamespaces()) {
+            if (!fields.containsKey(ns)) fields.put(ns, new LinkedHashMap<String, String>());
+            fields.get(ns).putAll(metadata.getFields(ns));
+        }
+        return fields;
+    }
+
+    /**
+     * The time of a frame from the start of a recording, in whole seconds plus the remainder, since
+     * the frame index in nanoseconds overflows a <code>long</code> after a few hours at high samplerates.
+     */
+    static Duration frameOffset(long frame, int sampleRate) {
+        return Duration.ofSeconds(frame / sampleRate, (frame % sampleRate) * 1_000_000_000L / sampleRate);
+    }
+
+    /**
+     * Offset a GUANO timestamp, preserving whether or not it has a UTC offset. Seconds are always
+     * written, even when zero.
+     * @return the offset timestamp, or <code>null</code> if the original cannot be parsed
+     */
+    static String offsetTimestamp(String value, Duration offset) {
+        value = GuanoReader.isoTimestamp(value);
+        try {
+            return OffsetDateTime.parse(value).plus(offset).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).plus(offset).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+
+    /** Write one segment: headers, then the transferred audio data, then the <code>guan</code> chunk */
+    private static void writeSegment(FileChannel in, Path segment, byte[] fmtChunk, long position, long size,
+                                     Map<String, Map<String, String>> fields) throws IOException {
+        long start = System.nanoTime();
+        byte[] metadataBytes = GuanoWaveWriter.renderMetadata(fields).getBytes(StandardCharsets.UTF_8);
+        int fmtPadded = fmtChunk.length + (fmtChunk.length % 2);
+        int dataPad = (int) (size % 2);
+        int metadataPadded = metadataBytes.length + (metadataBytes.length % 2);
+        long riffSize = 4 + (8 + fmtPadded) + (8 + size + dataPad) + (8 + metadataPadded);
+
+        ByteBuffer header = ByteBuffer.allocate(12 + 8 + fmtPadded + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) riffSize);
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        header.put(WaveReader.FMT_CHUNK_ID.getBytes(StandardCharsets.US_ASCII));
+        header.putInt(fmtChunk.length);
+        header.put(fmtChunk);
+        header.position(header.position() + fmtPadded - fmtChunk.length);
+        header.put(WaveReader.DATA_CHUNK_ID.getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) size);
+        header.flip();
+
+        ByteBuffer trailer = ByteBuffer.allocate(dataPad + 8 + metadataPadded).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.position(dataPad);
+        trailer.put(GuanoReader.GUANO_CHUNK_ID.getBytes(StandardCharsets.US_ASCII));
+        trailer.putInt(metadataPadded);
+        trailer.put(metadataBytes);
+        if (metadataPadded > metadataBytes.length) {
+            trailer.put((byte) '\n');  // pad for 16-bit alignment
+        }
+        trailer.flip();
+
+        try (FileChannel out = FileChannel.open(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (long transferred = 0; transferred < size; ) {
+                long n = in.transferTo(position + transferred, size - transferred, out);
+                if (n <= 0) throw new IOException("Unexpected end of audio data");
+                transferred += n;
+            }
+            while (trailer.hasRemaining()) {
+                out.write(trailer);
+            }
+        }
+        GuanoMetrics.recordWrite(8 + riffSize, System.nanoTime() - start);
+    }
+
+    /** Example main function which splits a directory tree of recordings into 5 second segments */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java guano.GuanoSplitter DIRECTORY OUTPUT_DIRECTORY [SEGMENT_SECONDS]");
+            System.exit(2);
+        }
+
+        GuanoSplitter splitter = new GuanoSplitter(args.length > 2 ? Double.parseDouble(args[2]) : 5.0);
+        try (GuanoScanner scanner = new GuanoScanner();
+             Stream<GuanoScanner.Result<List<Path>>> results = splitter.splitAll(Paths.get(args[0]), Paths.get(args[1]), scanner)) {
+            results.forEach(result -> {
+                if (result.isSuccess()) {
+                    System.out.println(String.format("%s\t%d segments", result.getPath(), result.getValue().size()));
+                } else {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package guano;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * A precompiled GUANO metadata block, for writing many files whose metadata differs in only a few fields.
+ *
+ * Fields whose values never change, eg. <code>Make</code> and <code>Model</code>, are added with
+ * <code>fixed()</code> and encoded to UTF-8 once, when the template is built. Fields which change from
+ * file to file, eg. <code>Timestamp</code> and <code>Length</code>, are added with <code>variable()</code>,
+ * which pre-encodes just the fieldname. Rendering a file's <code>guan</code> chunk then copies the
+ * pre-encoded bytes and fills in only the variable values, in the order their slots were declared, so
+ * the chunk's exact size and padding are known without any formatting or intermediate Strings.
+ * See the example <code>main()</code> function below for API usage example.
+ *
+ * Once built, a template may be used from multiple threads concurrently.
+ */
+public class GuanoTemplate {
+
+    private static final byte[] CHUNK_ID = GuanoReader.GUANO_CHUNK_ID.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VERSION_LINE = "GUANO|Version: 1.0\n".getBytes(StandardCharsets.UTF_8);
+
+    private byte[] fixed = VERSION_LINE;  // all fixed lines
+    private final List<byte[]> slots = new ArrayList<>();  // "Namespace|Field: " prefixes
+    private final List<String> slotNames = new ArrayList<>();  // pipe-delimited fieldname of each slot
+    private final Set<String> fixedNames = new HashSet<>();  // pipe-delimited
+
+    /**
+     * Add a field whose value is the same in every file.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @return this template
+     */
+    public GuanoTemplate fixed(String namespace, String fieldname, String value) {
+        if (namespace.equals("GUANO") && fieldname.equals("Version")) return this;  // always rendered first
+        byte[] line = (prefix(namespace, fieldname) + value + "\n").getBytes(StandardCharsets.UTF_8);
+        fixedNames.add(namespace.isEmpty() ? fieldname : namespace + "|" + fieldname);
+        byte[] appended = Arrays.copyOf(fixed, fixed.length + line.length);
+        System.arraycopy(line, 0, appended, fixed.length, line.length);
+        fixed = appended;
+        return this;
+    }
+
+    /**
+     * Add a top-level field whose value is the same in every file.
+     * @return this template
+     */
+    public GuanoTemplate fixed(GuanoField field, String value) {
+        return fixed("", field.getName(), value);
+    }
+
+    /**
+     * Add a slot for a field whose value changes from file to file.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @return this template
+     */
+    public GuanoTemplate variable(String namespace, String fieldname) {
+        slotNames.add(namespace.isEmpty() ? fieldname : namespace + "|" + fieldname);
+        slots.add(prefix(namespace, fieldname).getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * Add a slot for a top-level field whose value changes from file to file.
+     * @return this template
+     */
+    public GuanoTemplate variable(GuanoField field) {
+        return variable("", field.getName());
+    }
+
+    private static String prefix(String namespace, String fieldname) {
+        return namespace.isEmpty() ? fieldname + ": " : namespace + "|" + fieldname + ": ";
+    }
+
+    /**
+     * @param values one per variable slot, in order
+     * @return <code>true</code> if the rendered metadata will include the specified top-level field, either
+     *         as a fixed value, or as a slot whose value isn't <code>null</code>
+     */
+    boolean hasField(GuanoField field, String... values) {
+        if (fixedNames.contains(field.getName())) return true;
+        for (int i = 0; i < slotNames.size() && i < values.length; i++) {
+            if (values[i] != null && slotNames.get(i).equals(field.getName())) return true;
+        }
+        return false;
+    }
+
+    /** @return number of variable slots, ie. the number of values which must be supplied to render */
+    public int getSlotCount() {
+        return slots.size();
+    }
+
+    /**
+     * Compute the exact size of the metadata block with the specified values, excluding the chunk header and pad byte.
+     * @param values one per variable slot, in order; <code>null</code> omits that field
+     */
+    public int size(String... values) {
+        checkValues(values);
+        int size = fixed.length;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) size += slots.get(i).length + utf8Length(values[i]) + 1;
+        }
+        return size;
+    }
+
+    /**
+     * Compute the exact size of the complete <code>guan</code> chunk with the specified values,
+     * including its header and any pad byte.
+     * @param values one per variable slot, in order; <code>null</code> omits that field
+     */
+    public int chunkSize(String... values) {
+        int size = size(values);
+        return 8 + size + (size % 2);
+    }
+
+    /**
+     * Render the complete <code>guan</code> chunk, including its header and any pad byte.
+     * @param dst buffer with at least <code>chunkSize(values)</code> bytes remaining
+     * @param values one per variable slot, in order; <code>null</code> omits that field
+     * @return number of bytes written
+     */
+    public int render(ByteBuffer dst, String... values) {
+        int size = size(values);
+        int padded = size + (size % 2);  // pad for 16-bit alignment
+        dst.put(CHUNK_ID);
+        dst.put((byte) padded).put((byte) (padded >>> 8)).put((byte) (padded >>> 16)).put((byte) (padded >>> 24));
+        renderMetadata(dst, values);
+        if (padded > size) dst.put((byte) '\n');
+        return 8 + padded;
+    }
+
+    /**
+     * Render just the metadata block, without any chunk header or pad byte.
+     * @param values one per variable slot, in order; <code>null</code> omits that field
+     */
+    public byte[] toBytes(String... values) {
+        ByteBuffer buf = ByteBuffer.allocate(size(values));
+        renderMetadata(buf, values);
+        return buf.array();
+    }
+
+    private void renderMetadata(ByteBuffer dst, String[] values) {
+        dst.put(fixed);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) continue;
+            dst.put(slots.get(i));
+            putUtf8(dst, values[i]);
+            dst.put((byte) '\n');
+        }
+    }
+
+    private void checkValues(String[] values) {
+        if (values.length != slots.size()) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d", slots.size(), values.length));
+        }
+    }
+
+    /** Exact UTF-8 encoded length of a String, matching <code>getBytes()</code> */
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                length += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 1;  // unpaired surrogates are encoded as '?'
+            }
+        }
+        return length;
+    }
+
+    /** Encode a String as UTF-8 directly into a buffer, without an intermediate array for ASCII text */
+    private static void putUtf8(ByteBuffer dst, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                dst.put(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            dst.put((byte) c);
+        }
+    }
+
+    /** Example main function which renders the metadata of a few files from one template */
+    public static void main(String[] args) {
+        GuanoTemplate template = new GuanoTemplate()
+                .fixed(GuanoField.MAKE, "Myotisoft")
+                .fixed(GuanoField.MODEL, "Trigger Recorder")
+                .fixed(GuanoField.SAMPLERATE, "384000")
+                .variable(GuanoField.TIMESTAMP)
+                .variable(GuanoField.LENGTH)
+                .variable(GuanoField.TEMPERATURE_INT);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] metadata = template.toBytes(OffsetDateTime.now().toString(), Float.toString(1.5f * i), i == 1 ? null : "21.5");
+            System.out.println(new String(metadata, StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+package guano;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+
+/**
+ * Checks the structural integrity of .WAV files, and optionally repairs the damage typically left
+ * behind when a recorder loses power mid-file.
+ *
+ * Only the RIFF header, the chunk headers, and the tiny <code>fmt_</code> and <code>ds64</code> chunks
+ * are read, by positional reads at each chunk boundary, so checking a file costs a handful of seeks
+ * regardless of its length. Every chunk must lie within the file, and the file must end where its last
+ * chunk ends and where its RIFF header says it does.
+ *
+ * Repair patches sizes in place: a truncated <code>data</code> chunk is shrunk to the whole frames
+ * present, unaccounted bytes following the <code>data</code> chunk are adopted into it, any other
+ * truncated chunk or trailing garbage is cut off, and the RIFF size is set to match. A <code>data</code>
+ * chunk still holding a streaming writer's placeholder size of zero, with a RIFF size which doesn't reach
+ * past it, adopts everything to the end of the file without any of it being read as chunk headers, since
+ * audio can look like anything. Audio data is never rewritten. RF64 files are checked but not repaired.
+ * See the example <code>main()</code> function below for API usage example.
+ */
+public class GuanoValidator {
+
+    /** Largest RIFF size representable in a plain .WAV file */
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL - 1;
+
+    /**
+     * A single structural defect.
+     */
+    public enum Problem {
+        /** not a RIFF/WAVE file at all; nothing else is checked */
+        NOT_WAVE,
+        /** a chunk extends past the end of the file */
+        TRUNCATED,
+        /** the file holds bytes which belong to no chunk */
+        OVERSIZED,
+        /** every chunk is intact, but the RIFF header's size does not match the file */
+        RIFF_SIZE_MISMATCH,
+        MISSING_FMT,
+        MISSING_DATA,
+        MISSING_GUAN
+    }
+
+    /**
+     * The outcome of checking a single file.
+     */
+    public static class Report {
+        private final Path path;
+        private final long fileSize;
+        private final Set<Problem> problems;
+        private final boolean repaired;
+
+        Report(Path path, long fileSize, Set<Problem> problems, boolean repaired) {
+            this.path = path;
+            this.fileSize = fileSize;
+            this.problems = Collections.unmodifiableSet(problems);
+            this.repaired = repaired;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /** @return size of the file when it was checked, before any repair */
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        /** @return all problems found, before any repair */
+        public Set<Problem> getProblems() {
+            return problems;
+        }
+
+        /** @return <code>true</code> if the file is structurally sound, though it may lack GUANO metadata */
+        public boolean isValid() {
+            return problems.isEmpty() || problems.equals(EnumSet.of(Problem.MISSING_GUAN));
+        }
+
+        /** @return <code>true</code> if the file's sizes were patched */
+        public boolean isRepaired() {
+            return repaired;
+        }
+
+        public String toString() {
+            return String.format("%s: %s%s", path, problems.isEmpty() ? "OK" : problems, repaired ? " (repaired)" : "");
+        }
+    }
+
+    /** Chunk header walk results */
+    private static class Walk {
+        long riffSize;
+        boolean rf64;
+        int blockAlign = 1;
+        long dataOffset = -1;  // of the chunk header
+        long dataSize = -1;
+        boolean hasFmt, hasGuan;
+        long end = 12;  // just past the last intact chunk
+        boolean lastIsData;  // the last intact chunk is the data chunk
+        long truncatedOffset = -1;  // of the truncated chunk's header
+        boolean truncatedIsData;
+        boolean unaccounted;  // bytes remain after the last intact chunk which aren't a chunk
+    }
+
+    private final boolean repair;
+
+    /**
+     * Create a validator.
+     * @param repair whether to patch the sizes of damaged files in place
+     */
+    public GuanoValidator(boolean repair) {
+        this.repair = repair;
+    }
+
+    /**
+     * Check, and optionally repair, a single file.
+     * @param path
+     * @return the problems found
+     * @throws IOException
+     */
+    public Report validate(Path path) throws IOException {
+        try (FileChannel channel = repair
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Set<Problem> problems = EnumSet.noneOf(Problem.class);
+            Walk walk = walk(channel, fileSize);
+            if (walk == null) {
+                problems.add(Problem.NOT_WAVE);
+                return new Report(path, fileSize, problems, false);
+            }
+
+            if (walk.truncatedOffset >= 0) problems.add(Problem.TRUNCATED);
+            if (walk.unaccounted) problems.add(Problem.OVERSIZED);
+            if (problems.isEmpty() && !walk.rf64 && walk.riffSize + 8 != fileSize) problems.add(Problem.RIFF_SIZE_MISMATCH);
+            if (!walk.hasFmt) problems.add(Problem.MISSING_FMT);
+            if (walk.dataOffset < 0) problems.add(Problem.MISSING_DATA);
+            if (!walk.hasGuan) problems.add(Problem.MISSING_GUAN);
+
+            boolean repaired = false;
+            if (repair && !walk.rf64 && !Collections.disjoint(problems,
+                    EnumSet.of(Problem.TRUNCATED, Problem.OVERSIZED, Problem.RIFF_SIZE_MISMATCH))) {
+                repaired = repair(channel, fileSize, walk);
+            }
+            return new Report(path, fileSize, problems, repaired);
+        }
+    }
+
+    /**
+     * Walk the chunk headers without reading any chunk data, except the few bytes of
+     * <code>fmt_</code> and <code>ds64</code> needed to interpret the others.
+     * @return the walk, or <code>null</code> if this isn't a RIFF/WAVE file
+     */
+    private static Walk walk(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        header.limit(12);
+        if (!readFully(channel, header, 0)) return null;
+        String riffId = WaveReader.readId(header, 0);
+        Walk walk = new Walk();
+        walk.rf64 = riffId.equals("RF64") || riffId.equals("BW64");
+        if (!riffId.equals("RIFF") && !walk.rf64) return null;
+        if (!WaveReader.readId(header, 8).equals("WAVE")) return null;
+        walk.riffSize = header.getInt(4) & 0xFFFFFFFFL;
+
+        Map<String, Long> ds64Sizes = Collections.emptyMap();
+        long offset = 12;
+        while (offset < fileSize) {
+            header.clear().limit(8);
+            if (offset + 8 > fileSize || !readFully(channel, header, offset)) {
+                walk.unaccounted = true;  // too short to be a chunk header
+                break;
+            }
+            String id = WaveReader.readId(header, 0);
+            if (!isValidId(id)) {
+                walk.unaccounted = true;
+                break;
+            }
+            long size = header.getInt(4) & 0xFFFFFFFFL;
+            if (walk.rf64 && size == WaveReader.RF64_SIZE_PLACEHOLDER && ds64Sizes.containsKey(id)) {
+                size = ds64Sizes.get(id);
+            }
+            if (offset + 8 + size > fileSize) {
+                if (walk.lastIsData) {
+                    // audio beyond a placeholder data size, which merely happens to begin like a chunk header
+                    walk.unaccounted = true;
+                    break;
+                }
+                walk.truncatedOffset = offset;
+                walk.truncatedIsData = id.equals(WaveReader.DATA_CHUNK_ID);
+                if (walk.truncatedIsData) {
+                    walk.dataOffset = offset;
+                    walk.dataSize = size;
+                }
+                break;
+            }
+
+            if (id.equals(WaveReader.FMT_CHUNK_ID) && size >= 16) {
+                header.clear().limit(16);
+                if (readFully(channel, header, offset + 8)) {
+                    walk.blockAlign = Math.max(1, header.getShort(12) & 0xFFFF);
+                    walk.hasFmt = true;
+                }
+            } else if (walk.rf64 && id.equals(WaveReader.DS64_CHUNK_ID) && size >= 28) {
+                ByteBuffer ds64 = ByteBuffer.allocate((int) Math.min(size, 28 + 12 * 64));
+                if (readFully(channel, ds64, offset + 8)) {
+                    ds64Sizes = WaveReader.parseDs64(ds64.array());
+                    walk.riffSize = ByteBuffer.wrap(ds64.array()).order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+                }
+            } else if (id.equals(WaveReader.DATA_CHUNK_ID)) {
+                walk.dataOffset = offset;
+                walk.dataSize = size;
+                if (size == 0 && !walk.rf64 && offset + 8 < fileSize && walk.riffSize + 8 <= offset + 8) {
+                    // placeholder sizes left by a stream which was never finished: all that follows is audio
+                    walk.lastIsData = true;
+                    walk.end = offset + 8;
+                    walk.unaccounted = true;
+                    break;
+                }
+            } else if (id.equals(GuanoReader.GUANO_CHUNK_ID)) {
+                walk.hasGuan = true;
+            }
+
+            walk.lastIsData = id.equals(WaveReader.DATA_CHUNK_ID);
+            offset += 8 + size + (size % 2);  // chunks are word-aligned
+            walk.end = Math.min(offset, fileSize);  // tolerate a missing final pad byte
+        }
+        return walk;
+    }
+
+    /** RIFF chunk identifiers are four printable ASCII characters */
+    private static boolean isValidId(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < 0x20 || c > 0x7E) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Patch the sizes of a damaged plain RIFF file, truncating it if needed.
+     * @return <code>true</code> if the file was repaired, <code>false</code> if it could not be
+     */
+    private static boolean repair(FileChannel channel, long fileSize, Walk walk) throws IOException {
+        long end;
+        long dataSize = -1;
+        if ((walk.truncatedOffset >= 0 && walk.truncatedIsData) || (walk.unaccounted && walk.lastIsData)) {
+            // shrink or grow the data chunk to the whole frames actually present
+            long dataStart = walk.dataOffset + 8;
+            dataSize = (fileSize - dataStart) / walk.blockAlign * walk.blockAlign;
+            end = dataStart + dataSize;
+        } else if (walk.truncatedOffset >= 0) {
+            end = walk.truncatedOffset;  // drop the partial chunk
+        } else {
+            end = walk.end;  // drop trailing garbage, or just fix the RIFF size
+        }
+
+        boolean pad = end % 2 == 1;
+        if (end + (pad ? 1 : 0) - 8 > MAX_RIFF_SIZE) return false;
+
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        if (dataSize >= 0) {
+            size.putInt(0, (int) dataSize);
+            writeFully(channel, size, walk.dataOffset + 4);
+        }
+        if (pad) {
+            writeFully(channel, ByteBuffer.wrap(new byte[1]), end);
+            end++;
+        }
+        channel.truncate(end);
+        size.clear();
+        size.putInt(0, (int) (end - 8));
+        writeFully(channel, size, 4);
+        channel.force(false);
+        return true;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) return false;
+            position += n;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        buf.rewind();
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /**
+     * Check, and optionally repair, every .WAV file beneath a directory concurrently.
+     * @param root a directory to walk recursively, or a single file
+     * @param scanner used to check files concurrently
+     * @return a lazy stream of per-file results, which should be closed when done
+     * @throws IOException
+     */
+    public Stream<GuanoScanner.Result<Report>> validateAll(Path root, GuanoScanner scanner) throws IOException {
+        return scanner.scan(root, this::validate);
+    }
+
+    /** Example main function which reports (and optionally repairs) every damaged file in a directory tree */
+    public static void main(String[] args) {
+        boolean repair = args.length > 0 && args[0].equals("--repair");
+        if (args.length < (repair ? 2 : 1)) {
+            System.err.println("usage: java guano.GuanoValidator [--repair] DIRECTORY");
+            System.exit(2);
+        }
+
+        GuanoValidator validator = new GuanoValidator(repair);
+        final Map<Problem, Integer> counts = new EnumMap<>(Problem.class);
+        final int[] total = new int[1];
+        try (GuanoScanner scanner = new GuanoScanner(Runtime.getRuntime().availableProcessors() * 4);  // seek-bound
+             Stream<GuanoScanner.Result<Report>> results = validator.validateAll(Paths.get(repair ? args[1] : args[0]), scanner)) {
+            results.forEach(result -> {
+                total[0]++;
+                if (!result.isSuccess()) {
+                    System.err.println(String.format("%s\t%s", result.getPath(), result.getError()));
+                    return;
+                }
+                Report report = result.getValue();
+                for (Problem problem : report.getProblems()) {
+                    counts.put(problem, counts.containsKey(problem) ? counts.get(problem) + 1 : 1);
+                }
+                if (!report.getProblems().isEmpty()) {
+                    System.out.println(report);
+                }
+            });
+            System.out.println(String.format("%d files checked: %s", total[0], counts));
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package guano;
+
+
+/**
+ * Receives each field of a GUANO metadata block from {@link GuanoParser}, as ranges of the
+ * underlying UTF-8 bytes rather than as Strings. Implementations decode (or compare, see
+ * {@link GuanoParser#equals(byte[], int, int, byte[])}) only the fields they need.
+ *
+ * All ranges are half-open, <code>[start, end)</code>, and already trimmed of whitespace.
+ * Top-level fields have an empty namespace range.
+ */
+public interface GuanoVisitor {
+
+    /**
+     * Visit a single field.
+     * @param data buffer holding the UTF-8 metadata, which must not be modified
+     * @return <code>true</code> to continue parsing, <code>false</code> to stop
+     */
+    boolean visit(byte[] data, int nsStart, int nsEnd, int fieldStart, int fieldEnd, int valueStart, int valueEnd);
+
+}
@@ -1,16 +1,26 @@
 package guano;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.util.*;
 
 
 /**
- * Simple class that writes 16-bit mono .WAV files with GUANO metadata.
+ * Simple class that writes .WAV files with GUANO metadata.
  *
- * The actual .WAV audio data must be set by calling <code>setAudioData()</code>.
+ * The actual .WAV audio data must be set by calling <code>setAudioData()</code>. Audio is
+ * 16-bit mono by default, but any number of channels and any format supported by
+ * <code>SampleCodec</code> may be written, eg. 24-bit or 32-bit float, by passing a
+ * <code>WaveFormat</code> along with normalized <code>float</code> samples, either interleaved
+ * or planar. Formats with more than two channels or 16 bits are written in the
+ * <code>WAVE_FORMAT_EXTENSIBLE</code> form.
  *
  * Methods <code>setString()</code>, <code>setInt()</code>, and <code>setFloat()</code>
  * are provided for setting GUANO metadata fields. Fields which require a more complex
@@ -21,19 +31,43 @@ import java.util.*;
  * that you perform sanity checks beforehand by calling <code>validate()</code>. See the
  * example <code>main()</code> function below for API usage example.
  *
+ * Alternately, long recordings may be streamed to disk in constant memory: call
+ * <code>startAudioStream()</code>, then <code>appendSamples()</code> as often as needed,
+ * and finally <code>close()</code>, which writes the metadata and patches up the RIFF headers.
+ * Metadata fields may be set at any time before <code>close()</code>.
+ *
+ * Files larger than 4GB are written in the RF64 format. Streamed files reserve space for the
+ * RF64 <code>ds64</code> chunk with a <code>JUNK</code> chunk, and are converted to RF64 on
+ * <code>close()</code> only if they have grown too large to be plain .WAV files.
+ *
  * Created by driggs on 12/11/16.
  */
-public class GuanoWaveWriter {
+public class GuanoWaveWriter implements Closeable {
+
+    /** Size of the <code>ds64</code> chunk (without its size table) which RF64 files add to the header */
+    private static final int DS64_SIZE = 8 + 28;
+
+    /** Largest RIFF size representable in a plain .WAV file; larger files are written as RF64 */
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL - 1;
 
     private final FileOutputStream fos;
-    private short[] audioData = null;
-    private int sampleRate;  // Hz
-    private short nChannels = 1;
-    private short sampleWidth = 2;  // bytes
+    private short[] audioData = null;  // 16-bit PCM
+    private float[] floatAudioData = null;  // any other format, encoded by the codec
+    private WaveDataOutputStream stream = null;  // non-null while streaming
+    private long streamedDataSize = 0;  // bytes
+    private long streamNanos = 0;  // time spent in streaming calls, for GuanoMetrics
+    private WaveFormat format;
+    private SampleCodec codec;
+    private byte[] fmtChunk;
+    private float[] interleaveScratch;  // for appending planar frames
 
     /** Stateful mapping of namespace to field key->value mapping */
     private Map<String, Map<String, String>> namespaceFields = new HashMap<>();
 
+    /** Template used instead of the above fields, and its per-file values */
+    private GuanoTemplate template = null;
+    private String[] templateValues;
+
     /**
      * Create a GUANO Writer instance.
      * @param filename
@@ -69,10 +103,10 @@ public class GuanoWaveWriter {
      */
     public void setString(String fieldname, String value) {
         String ns = "";
-        if (fieldname.contains("\\|")) {
-            String[] toks = fieldname.split("\\|", 2);
-            ns = toks[0];
-            fieldname = toks[1];
+        int pipe = fieldname.indexOf('|');
+        if (pipe >= 0) {
+            ns = fieldname.substring(0, pipe);
+            fieldname = fieldname.substring(pipe + 1);
         }
         setString(ns, fieldname, value);
     }
@@ -155,14 +189,212 @@ public class GuanoWaveWriter {
         setString(namespace, fieldname, Float.toString(value));
     }
 
+    /**
+     * Remove a metadata field.
+     * @param namespace a namespace, or empty string for top-level fields
+     * @param fieldname
+     */
+    public void remove(String namespace, String fieldname) {
+        Map<String, String> fields = namespaceFields.get(namespace);
+        if (fields != null) {
+            fields.remove(fieldname);
+        }
+    }
+
+    /**
+     * Render the metadata from a precompiled template instead of from fields set individually,
+     * which are then ignored. This avoids formatting and encoding the fixed fields for every file.
+     * @param template
+     * @param values the file's value for each of the template's variable slots, in order
+     */
+    public void setMetadata(GuanoTemplate template, String... values) {
+        if (values.length != template.getSlotCount()) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d", template.getSlotCount(), values.length));
+        }
+        this.template = template;
+        this.templateValues = values.clone();
+    }
+
     /**
      * Set the actual .WAV audio data.
      * @param sampleRate audio samplerate in Hz
      * @param audioData
      */
     public void setAudioData(int sampleRate, short[] audioData) {
-        this.sampleRate = sampleRate;
+        setAudioData(sampleRate, 1, audioData);
+    }
+
+    /**
+     * Set the actual .WAV audio data, as 16-bit PCM with any number of channels.
+     * @param sampleRate audio samplerate in Hz
+     * @param channels
+     * @param audioData interleaved samples
+     */
+    public void setAudioData(int sampleRate, int channels, short[] audioData) {
+        if (audioData.length % channels != 0) throw new IllegalArgumentException("Audio data must hold whole frames");
+        setFormat(WaveFormat.pcm(channels, sampleRate, 16));
         this.audioData = audioData;
+        this.floatAudioData = null;
+    }
+
+    /**
+     * Set the actual .WAV audio data, in any supported format.
+     * @param format eg. <code>WaveFormat.pcm(4, 384000, 24)</code> or <code>WaveFormat.ieeeFloat(4, 384000)</code>
+     * @param audioData interleaved samples in the range [-1.0, 1.0)
+     */
+    public void setAudioData(WaveFormat format, float[] audioData) {
+        if (audioData.length % format.getChannels() != 0) throw new IllegalArgumentException("Audio data must hold whole frames");
+        setFormat(format);
+        this.floatAudioData = audioData;
+        this.audioData = null;
+    }
+
+    /**
+     * Set the actual .WAV audio data, in any supported format.
+     * @param format eg. <code>WaveFormat.pcm(4, 384000, 24)</code> or <code>WaveFormat.ieeeFloat(4, 384000)</code>
+     * @param audioData one array of samples in the range [-1.0, 1.0) per channel, all the same length
+     */
+    public void setAudioData(WaveFormat format, float[][] audioData) {
+        if (audioData.length != format.getChannels()) throw new IllegalArgumentException("Expected one array per channel");
+        for (float[] channel : audioData) {
+            if (channel.length != audioData[0].length) throw new IllegalArgumentException("Every channel must hold the same number of samples");
+        }
+        float[] interleaved = new float[audioData.length * audioData[0].length];
+        SampleCodec.interleave(audioData, 0, audioData[0].length, interleaved, 0);
+        setAudioData(format, interleaved);
+    }
+
+    private void setFormat(WaveFormat format) {
+        try {
+            this.codec = SampleCodec.forFormat(format);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        this.format = format;
+        this.fmtChunk = format.toBytes();
+    }
+
+    /**
+     * Begin streaming 16-bit mono audio data to the file. The file header is written immediately
+     * with placeholder sizes, which are filled in by <code>close()</code>.
+     * @param sampleRate audio samplerate in Hz
+     * @throws IOException
+     */
+    public void startAudioStream(int sampleRate) throws IOException {
+        startAudioStream(WaveFormat.pcm(1, sampleRate, 16));
+    }
+
+    /**
+     * Begin streaming audio data in any supported format to the file. The file header is written
+     * immediately with placeholder sizes, which are filled in by <code>close()</code>.
+     * @param format eg. <code>WaveFormat.pcm(4, 384000, 24)</code> or <code>WaveFormat.ieeeFloat(4, 384000)</code>
+     * @throws IOException
+     */
+    public void startAudioStream(WaveFormat format) throws IOException {
+        if (stream != null || audioData != null || floatAudioData != null) throw new IllegalStateException("Audio data has already been set");
+        long start = System.nanoTime();
+        setFormat(format);
+        stream = new WaveDataOutputStream(fos);
+        writeHeader(stream, 0, 0, true);
+        streamNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Append 16-bit audio samples to a stream begun with <code>startAudioStream()</code> in 16-bit PCM format.
+     * @param buf buffer holding the interleaved samples
+     * @param off offset of the first sample to write
+     * @param len number of samples to write
+     * @throws IOException
+     */
+    public void appendSamples(short[] buf, int off, int len) throws IOException {
+        if (stream == null) throw new IllegalStateException("You must call `startAudioStream(int)` before appending samples");
+        if (!format.isPcm16()) throw new IllegalStateException("16-bit samples can't be appended to a stream of " + format);
+        long start = System.nanoTime();
+        stream.writeWavBytes(buf, off, len);
+        streamedDataSize += (long) len * 2;
+        streamNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Append audio samples to a stream begun with <code>startAudioStream()</code>, encoding them in the stream's format.
+     * @param buf buffer holding the interleaved samples, in the range [-1.0, 1.0)
+     * @param off offset of the first sample to write
+     * @param len number of samples to write
+     * @throws IOException
+     */
+    public void appendSamples(float[] buf, int off, int len) throws IOException {
+        if (stream == null) throw new IllegalStateException("You must call `startAudioStream(WaveFormat)` before appending samples");
+        long start = System.nanoTime();
+        stream.writeWavSamples(codec, buf, off, len);
+        streamedDataSize += (long) len * codec.getBytesPerSample();
+        streamNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Append audio frames to a stream begun with <code>startAudioStream()</code>, encoding them in the stream's format.
+     * @param buf one array of samples in the range [-1.0, 1.0) per channel
+     * @param off index in each channel's array of the first frame to write
+     * @param frames number of frames to write
+     * @throws IOException
+     */
+    public void appendFrames(float[][] buf, int off, int frames) throws IOException {
+        if (stream == null) throw new IllegalStateException("You must call `startAudioStream(WaveFormat)` before appending frames");
+        if (buf.length != format.getChannels()) throw new IllegalArgumentException("Expected one array per channel");
+        int channels = buf.length;
+        if (interleaveScratch == null) interleaveScratch = new float[channels * 16 * 1024];
+        int blockFrames = interleaveScratch.length / channels;
+        for (int i = 0; i < frames; i += blockFrames) {
+            int n = Math.min(blockFrames, frames - i);
+            SampleCodec.interleave(buf, off + i, n, interleaveScratch, 0);
+            appendSamples(interleaveScratch, 0, n * channels);
+        }
+    }
+
+    /**
+     * Finish a stream begun with <code>startAudioStream()</code> by writing the <code>guan</code>
+     * metadata chunk and then seeking back to patch the RIFF and <code>data</code> chunk sizes.
+     * If no stream was started, this simply closes the underlying file.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (stream == null) {
+            fos.close();
+            return;
+        }
+
+        long start = System.nanoTime();
+        long riffSize;
+        try (WaveDataOutputStream out = stream) {
+            byte[] metadataBytes = renderMetadataBytes();
+            riffSize = riffSize(streamedDataSize, metadataBytes.length, true);
+
+            if (streamedDataSize % 2 == 1) out.writeByte(0);  // pad for 16-bit alignment
+            writeMetadataChunk(out, metadataBytes);
+            out.flush();
+
+            FileChannel channel = fos.getChannel();
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            if (riffSize > MAX_RIFF_SIZE) {
+                // convert to RF64, replacing the reserved JUNK chunk with a ds64 chunk
+                channel.write(ByteBuffer.wrap("RF64".getBytes(StandardCharsets.US_ASCII)), 0);
+                size.putInt(0, (int) WaveReader.RF64_SIZE_PLACEHOLDER);
+                channel.write(size, 4);
+                channel.write(ds64Chunk(riffSize, streamedDataSize), 12);
+                size.clear();
+                size.putInt(0, (int) WaveReader.RF64_SIZE_PLACEHOLDER);
+                channel.write(size, dataSizeOffset());
+            } else {
+                size.putInt(0, (int) riffSize);
+                channel.write(size, 4);
+                size.clear();
+                size.putInt(0, (int) streamedDataSize);
+                channel.write(size, dataSizeOffset());
+            }
+        } finally {
+            stream = null;
+        }
+        GuanoMetrics.recordWrite(8 + riffSize, streamNanos + System.nanoTime() - start);
     }
 
     /**
@@ -186,7 +418,7 @@ public class GuanoWaveWriter {
         boolean valid = true;
 
         // validate audio
-        if (audioData == null) {
+        if (audioData == null && floatAudioData == null && stream == null) {
             valid = false;
             if (exceptionOnFail) throw new IllegalArgumentException("You must call `setAudioData(short[])` to set audio data");
         }
@@ -195,7 +427,7 @@ public class GuanoWaveWriter {
         List<GuanoField> requiredFields = Arrays.asList(GuanoField.TIMESTAMP);
         Map<String, String> topLevelFields = namespaceFields.get("");
         for (GuanoField field : requiredFields) {
-            if (!topLevelFields.containsKey(field.toString())) {
+            if (template != null ? !template.hasField(field, templateValues) : !topLevelFields.containsKey(field.toString())) {
                 valid = false;
                 if (exceptionOnFail) throw new IllegalArgumentException("Missing required metadata field "+field.toString());
             }
@@ -203,69 +435,130 @@ public class GuanoWaveWriter {
         return valid;
     }
 
-    /** Render the GUANO metadata block as string. */
-    private String renderMetadata() {
+    /** Render the GUANO metadata block as UTF-8 bytes, from the template if one was set. */
+    private byte[] renderMetadataBytes() {
+        if (template != null) return template.toBytes(templateValues);
+        return renderMetadata(namespaceFields).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Render the GUANO metadata block for the specified namespace to field key->value mapping. */
+    static String renderMetadata(Map<String, Map<String, String>> namespaceFields) {
         StringBuilder sb = new StringBuilder();
         sb.append("GUANO|Version: 1.0\n");
         for (String ns : namespaceFields.keySet()) {
             for (Map.Entry<String, String> field : namespaceFields.get(ns).entrySet()) {
                 if (ns.isEmpty()) {
-                    sb.append(String.format("%s: %s\n", field.getKey(), field.getValue()));
+                    sb.append(field.getKey()).append(": ").append(field.getValue()).append('\n');
+                } else if (ns.equals("GUANO") && field.getKey().equals("Version")) {
+                    continue;  // always rendered first, above
                 } else {
-                    sb.append(String.format("%s|%s: %s\n", ns, field.getKey(), field.getValue()));
+                    sb.append(ns).append('|').append(field.getKey()).append(": ").append(field.getValue()).append('\n');
                 }
             }
         }
         return sb.toString();
     }
 
+    /** Size of the RIFF chunk's contents, which is the file size minus its 8-byte RIFF header. */
+    private long riffSize(long audioDataSize, int metadataSize, boolean ds64) {
+        return 4 + (ds64 ? DS64_SIZE : 0) + (8 + fmtChunk.length) + (8 + audioDataSize + (audioDataSize % 2))
+                + (8 + metadataSize + (metadataSize % 2));
+    }
+
+    /** Offset of the <code>data</code> chunk's size field, in a streamed file with space reserved for <code>ds64</code> */
+    private long dataSizeOffset() {
+        return 12 + DS64_SIZE + 8 + fmtChunk.length + 4;
+    }
+
     /**
-     * Write the 16-bit mono .WAV file, including its RIFF wrapper,
+     * Write the RIFF, <code>fmt_</code>, and <code>data</code> headers which precede the audio data.
+     * If the RIFF size is too large for a plain .WAV file, the RF64 header and <code>ds64</code> chunk
+     * are written instead; otherwise, space may optionally be reserved for them with a <code>JUNK</code> chunk.
+     */
+    private void writeHeader(WaveDataOutputStream out, long riffSize, long audioDataSize, boolean reserveDs64) throws IOException {
+        boolean rf64 = riffSize > MAX_RIFF_SIZE;
+
+        // HEADER
+        out.writeBytes(rf64 ? "RF64" : "RIFF");
+        out.writeWavInt((int) (rf64 ? WaveReader.RF64_SIZE_PLACEHOLDER : riffSize));
+        out.writeBytes("WAVE");
+
+        // DS64 CHUNK
+        if (rf64) {
+            out.write(ds64Chunk(riffSize, audioDataSize).array());
+        } else if (reserveDs64) {
+            out.writeBytes("JUNK");
+            out.writeWavInt(DS64_SIZE - 8);
+            out.write(new byte[DS64_SIZE - 8]);
+        }
+
+        // FORMAT CHUNK
+        out.writeBytes("fmt ");
+        out.writeWavInt(fmtChunk.length);  // fmt_ subchunk size
+        out.write(fmtChunk);  // format, channels, samplerate, byte rate, block alignment, samplewidth, and any extension
+
+        // DATA CHUNK
+        out.writeBytes("data");
+        out.writeWavInt((int) (rf64 ? WaveReader.RF64_SIZE_PLACEHOLDER : audioDataSize));
+    }
+
+    /** Render the RF64 <code>ds64</code> chunk, which holds the 64-bit RIFF and data sizes. */
+    private ByteBuffer ds64Chunk(long riffSize, long audioDataSize) {
+        ByteBuffer ds64 = ByteBuffer.allocate(DS64_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ds64.put(WaveReader.DS64_CHUNK_ID.getBytes(StandardCharsets.US_ASCII));
+        ds64.putInt(DS64_SIZE - 8);
+        ds64.putLong(riffSize);
+        ds64.putLong(audioDataSize);
+        ds64.putLong(audioDataSize / format.getBlockAlign());  // sample count
+        ds64.putInt(0);  // size table length
+        ds64.flip();
+        return ds64;
+    }
+
+    /** Write the <code>guan</code> chunk, which follows the audio data. */
+    private static void writeMetadataChunk(WaveDataOutputStream out, byte[] metadataBytes) throws IOException {
+        out.writeBytes("guan");
+        out.writeWavInt(metadataBytes.length + (metadataBytes.length % 2));  // pad for 16-bit alignment
+        out.write(metadataBytes);
+        if ((metadataBytes.length % 2) == 1) {
+            out.writeByte('\n');  // pad for 16-bit alignment
+        }
+    }
+
+    /**
+     * Write the .WAV file, including its RIFF wrapper,
      * <code>fmt_</code>, <code>data</code>, and <code>guan</code> chunks.
      * @throws IOException
      */
     public void write() throws IOException {
-        String metadata = renderMetadata();
-        byte[] metadataBytes = metadata.getBytes("UTF-8");
+        if (stream != null) throw new IllegalStateException("Streamed audio must be finished with `close()`");
+        long start = System.nanoTime();
+        byte[] metadataBytes = renderMetadataBytes();
 
-        int audioDataSize = audioData.length * sampleWidth * nChannels;
+        long audioDataSize = audioData != null ? (long) audioData.length * 2
+                : (long) floatAudioData.length * codec.getBytesPerSample();
 
-        int riffSize = 4 + (8 + 16) + (8 + audioDataSize) + (8 + metadataBytes.length + (metadataBytes.length % 2));
+        long riffSize = riffSize(audioDataSize, metadataBytes.length, false);
+        if (riffSize > MAX_RIFF_SIZE) {
+            riffSize = riffSize(audioDataSize, metadataBytes.length, true);
+        }
 
         try (WaveDataOutputStream out = new WaveDataOutputStream(fos)) {
 
-            // HEADER
-            out.writeBytes("RIFF");
-            out.writeWavInt(riffSize);
-            out.writeBytes("WAVE");
-
-            // FORMAT CHUNK
-            out.writeBytes("fmt ");
-            out.writeWavInt(16);  // fmt_ subchunk size
-            out.writeWavShort(1);  // PCM audio format
-            out.writeWavShort(nChannels);
-            out.writeWavInt(sampleRate);
-            out.writeWavInt(sampleRate * nChannels * sampleWidth);  // byte rate
-            out.writeWavShort(nChannels * sampleWidth);  // block alignment
-            out.writeWavShort(sampleWidth * 8);  // samplewidth in bits
-
-            // DATA CHUNK
-            out.writeBytes("data");
-            out.writeWavInt(audioDataSize);
-            out.writeWavBytes(audioData);
-
-            // GUANO METADATA CHUNK
-            out.writeBytes("guan");
-            out.writeWavInt(metadataBytes.length + (metadataBytes.length % 2));  // pad for 16-bit alignment
-            out.write(metadataBytes);
-            if ((metadataBytes.length % 2) == 1) {
-                out.writeChar('\n');  // pad for 16-bit alignment
+            writeHeader(out, riffSize, audioDataSize, false);
+            if (audioData != null) {
+                out.writeWavBytes(audioData);
+            } else {
+                out.writeWavSamples(codec, floatAudioData, 0, floatAudioData.length);
             }
+            if (audioDataSize % 2 == 1) out.writeByte(0);  // pad for 16-bit alignment
+            writeMetadataChunk(out, metadataBytes);
 
             // FINALIZE
             out.flush();
             out.close();
         }
+        GuanoMetrics.recordWrite(8 + riffSize, System.nanoTime() - start);
     }
 
     /** Example main function which drives the above code */
@@ -0,0 +1,96 @@
+package guano;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+
+/**
+ * Adapts an <code>InputStream</code> to a forward-only <code>SeekableByteChannel</code>, so that
+ * <code>WaveReader</code> can walk the chunks of a stream exactly as it would a file.
+ *
+ * Seeking forward is performed with <code>InputStream.skip()</code>, which is free for streams that
+ * support it (eg. stored ZIP entries) and otherwise reads and discards the skipped bytes through a
+ * small buffer, so large chunks are never held in memory. Seeking backward is an error. The stream's
+ * length is not known, so <code>size()</code> is unbounded and truncation is detected by end-of-stream.
+ * Closing the channel does not close the stream.
+ */
+class InputStreamChannel implements SeekableByteChannel {
+
+    private final InputStream in;
+    private long position = 0;
+    private boolean open = true;
+
+    InputStreamChannel(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (!dst.hasRemaining()) return 0;
+        int n;
+        if (dst.hasArray()) {
+            n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (n > 0) dst.position(dst.position() + n);
+        } else {
+            byte[] buf = new byte[Math.min(dst.remaining(), 8192)];
+            n = in.read(buf);
+            if (n > 0) dst.put(buf, 0, n);
+        }
+        if (n > 0) position += n;
+        return n;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (newPosition < position) {
+            throw new IOException(String.format("Cannot seek backward in a stream, from %d to %d", position, newPosition));
+        }
+        while (position < newPosition) {
+            long n = in.skip(newPosition - position);
+            if (n <= 0) {
+                if (in.read() < 0) break;  // skip() needn't detect the end of stream; later reads return -1
+                n = 1;
+            }
+            position += n;
+        }
+        return this;
+    }
+
+    /** @return <code>Long.MAX_VALUE</code>, since the length of a stream is unknown */
+    @Override
+    public long size() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+}
@@ -0,0 +1,46 @@
+package guano;
+
+
+/**
+ * A parsed <code>Loc Position</code> field: WGS84 latitude and longitude in decimal degrees.
+ */
+public class LocPosition {
+
+    private final double latitude;
+    private final double longitude;
+
+    public LocPosition(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Parse a <code>Loc Position</code> value, which is latitude and longitude separated by whitespace.
+     * @param value
+     * @return the position, or <code>null</code> if the value is malformed
+     */
+    public static LocPosition parse(String value) {
+        String[] toks = value.trim().split("[\\s,]+");
+        if (toks.length != 2) return null;
+        try {
+            return new LocPosition(Double.parseDouble(toks[0]), Double.parseDouble(toks[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /** @return the position serialized as a GUANO <code>Loc Position</code> value */
+    @Override
+    public String toString() {
+        return latitude + " " + longitude;
+    }
+
+}
@@ -0,0 +1,96 @@
+package guano;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+
+/**
+ * A .WAV file reader backed by a memory-mapped file. Chunks are exposed as read-only,
+ * little-endian <code>ByteBuffer</code> slices of the mapping rather than copied onto the
+ * heap, so large recordings may be opened without heap pressure and their pages are shared
+ * with any other process reading the same file through the OS page cache.
+ */
+public class MappedWaveReader {
+
+    private final Collection<String> chunkNames;
+    private final Map<String, ByteBuffer> chunks = new HashMap<>();
+
+    public MappedWaveReader(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    public MappedWaveReader(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    public MappedWaveReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WaveReader headers = new WaveReader(channel, Collections.<String>emptySet());
+            chunkNames = headers.getChunkNames();
+
+            long length = channel.size();
+            MappedByteBuffer file = null;
+            if (length <= Integer.MAX_VALUE) {
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+
+            for (String name : chunkNames) {
+                long offset = headers.getChunkOffset(name);
+                long size = headers.getChunkSize(name);
+                ByteBuffer chunk;
+                if (file != null) {
+                    ByteBuffer view = file.duplicate();
+                    view.position((int) offset).limit((int) (offset + size));
+                    chunk = view.slice();
+                } else {
+                    // too large to map as a whole, so map each chunk individually
+                    if (size > Integer.MAX_VALUE) throw new IOException("Chunk too large to map: " + name);
+                    chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                }
+                chunks.put(name, chunk.asReadOnlyBuffer());
+            }
+        }
+    }
+
+    public Collection<String> getChunkNames() {
+        return chunkNames;
+    }
+
+    public boolean hasChunk(String name) {
+        return chunks.containsKey(name);
+    }
+
+    /**
+     * Get a chunk's data as a read-only, little-endian view of the mapped file. Each call returns
+     * an independent buffer, so callers are free to modify its position and limit.
+     * @return the chunk's data, or <code>null</code> if the chunk is absent
+     */
+    public ByteBuffer getChunk(String name) {
+        ByteBuffer chunk = chunks.get(name);
+        return chunk != null ? chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN) : null;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: java guano.MappedWaveReader WAVFILE");
+            System.exit(2);
+        }
+
+        try {
+            MappedWaveReader reader = new MappedWaveReader(args[0]);
+            for (String name : reader.getChunkNames()) {
+                System.out.println(String.format("%s[%d]", name, reader.getChunk(name).remaining()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+package guano;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Bulk conversion between the little-endian sample bytes of a .WAV <code>data</code> chunk and
+ * normalized <code>float</code> samples in the range [-1.0, 1.0).
+ *
+ * There is one codec for each supported encoding: 8, 16, 24, and 32-bit integer PCM, and 32-bit
+ * IEEE float. The format is resolved once, by <code>forFormat()</code>, and each codec's loops are
+ * specialized to its own sample width, with no per-sample branching on the format, so that the
+ * JIT can compile each to a tight loop. Integer samples are scaled by 2<sup>-(bits-1)</sup>, so every
+ * 8, 16, and 24-bit sample converts exactly; 32-bit integer samples keep 24 significant bits. Encoding
+ * rounds and clips to the integer range.
+ *
+ * Samples are interleaved, as in the file; <code>interleave()</code> and <code>deinterleave()</code>
+ * convert to and from planar arrays of one channel each. Codecs are stateless, and may be shared
+ * between threads.
+ */
+public abstract class SampleCodec {
+
+    /** Number of samples copied at a time to or from a direct buffer */
+    private static final int BLOCK_SAMPLES = 16 * 1024;
+
+    /** Little-endian views of byte arrays, which compile to single unaligned loads and stores */
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle FLOAT_LE = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final SampleCodec PCM8 = new Pcm8();
+    private static final SampleCodec PCM16 = new Pcm16();
+    private static final SampleCodec PCM24 = new Pcm24();
+    private static final SampleCodec PCM32 = new Pcm32();
+    private static final SampleCodec FLOAT32 = new Float32();
+
+    /**
+     * Get the codec for an audio format.
+     * @param format
+     * @throws IOException if the format is not supported
+     */
+    public static SampleCodec forFormat(WaveFormat format) throws IOException {
+        int bits = format.getBitsPerSample();
+        if (format.getBlockAlign() != format.getChannels() * bits / 8) {
+            throw new IOException("Unsupported audio format, frames are not tightly packed: " + format);
+        }
+        if (format.getEncoding() == WaveFormat.WAVE_FORMAT_PCM) {
+            switch (bits) {
+                case 8: return PCM8;
+                case 16: return PCM16;
+                case 24: return PCM24;
+                case 32: return PCM32;
+            }
+        } else if (format.isFloat()) {
+            return FLOAT32;
+        }
+        throw new IOException("Unsupported audio format: " + format);
+    }
+
+    /** @return size of a single sample in bytes */
+    public abstract int getBytesPerSample();
+
+    /**
+     * Decode samples. The source's byte order is ignored, and its position advanced past the samples read.
+     * @param src little-endian sample bytes, with at least <code>count * getBytesPerSample()</code> remaining
+     * @param dst array to receive the normalized samples
+     * @param off index of the first sample in <code>dst</code>
+     * @param count number of samples to decode
+     */
+    public final void decode(ByteBuffer src, float[] dst, int off, int count) {
+        int width = getBytesPerSample();
+        if (src.hasArray()) {
+            decode(src.array(), src.arrayOffset() + src.position(), dst, off, count);
+            src.position(src.position() + count * width);
+            return;
+        }
+        byte[] block = new byte[Math.min(count, BLOCK_SAMPLES) * width];  // direct buffers are copied through the heap
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, BLOCK_SAMPLES);
+            src.get(block, 0, n * width);
+            decode(block, 0, dst, off + i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Encode samples. The destination's byte order is ignored, and its position advanced past the samples written.
+     * @param src normalized samples, which integer encodings clip to their range
+     * @param off index of the first sample in <code>src</code>
+     * @param count number of samples to encode
+     * @param dst buffer with at least <code>count * getBytesPerSample()</code> remaining
+     */
+    public final void encode(float[] src, int off, int count, ByteBuffer dst) {
+        int width = getBytesPerSample();
+        if (dst.hasArray()) {
+            encode(src, off, count, dst.array(), dst.arrayOffset() + dst.position());
+            dst.position(dst.position() + count * width);
+            return;
+        }
+        byte[] block = new byte[Math.min(count, BLOCK_SAMPLES) * width];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, BLOCK_SAMPLES);
+            encode(src, off + i, n, block, 0);
+            dst.put(block, 0, n * width);
+            i += n;
+        }
+    }
+
+    /** Decode samples from a byte array, starting at byte index <code>pos</code> */
+    abstract void decode(byte[] src, int pos, float[] dst, int off, int count);
+
+    /** Encode samples to a byte array, starting at byte index <code>pos</code> */
+    abstract void encode(float[] src, int off, int count, byte[] dst, int pos);
+
+    /**
+     * Split interleaved samples into one array per channel.
+     * @param src interleaved samples
+     * @param off index of the first sample in <code>src</code>
+     * @param frames number of frames to convert
+     * @param dst one array per channel
+     * @param dstOff index in each channel's array of the first frame
+     */
+    public static void deinterleave(float[] src, int off, int frames, float[][] dst, int dstOff) {
+        int channels = dst.length;
+        for (int c = 0; c < channels; c++) {
+            float[] channel = dst[c];
+            for (int i = 0, j = off + c; i < frames; i++, j += channels) {
+                channel[dstOff + i] = src[j];
+            }
+        }
+    }
+
+    /**
+     * Merge one array per channel into interleaved samples.
+     * @param src one array per channel
+     * @param srcOff index in each channel's array of the first frame
+     * @param frames number of frames to convert
+     * @param dst array to receive interleaved samples
+     * @param off index of the first sample in <code>dst</code>
+     */
+    public static void interleave(float[][] src, int srcOff, int frames, float[] dst, int off) {
+        int channels = src.length;
+        for (int c = 0; c < channels; c++) {
+            float[] channel = src[c];
+            for (int i = 0, j = off + c; i < frames; i++, j += channels) {
+                dst[j] = channel[srcOff + i];
+            }
+        }
+    }
+
+    /** 8-bit PCM, which is unsigned */
+    private static final class Pcm8 extends SampleCodec {
+        public int getBytesPerSample() {
+            return 1;
+        }
+
+        void decode(byte[] src, int pos, float[] dst, int off, int count) {
+            for (int i = 0; i < count; i++) {
+                dst[off + i] = ((src[pos + i] & 0xFF) - 128) * (1f / 128);
+            }
+        }
+
+        void encode(float[] src, int off, int count, byte[] dst, int pos) {
+            for (int i = 0; i < count; i++) {
+                dst[pos + i] = (byte) (clip(round(src[off + i] * 128f), 127) + 128);
+            }
+        }
+    }
+
+    private static final class Pcm16 extends SampleCodec {
+        public int getBytesPerSample() {
+            return 2;
+        }
+
+        void decode(byte[] src, int pos, float[] dst, int off, int count) {
+            for (int i = 0; i < count; i++) {
+                dst[off + i] = (short) SHORT_LE.get(src, pos + 2 * i) * (1f / 32768);
+            }
+        }
+
+        void encode(float[] src, int off, int count, byte[] dst, int pos) {
+            for (int i = 0; i < count; i++) {
+                SHORT_LE.set(dst, pos + 2 * i, (short) clip(round(src[off + i] * 32768f), 32767));
+            }
+        }
+    }
+
+    private static final class Pcm24 extends SampleCodec {
+        public int getBytesPerSample() {
+            return 3;
+        }
+
+        void decode(byte[] src, int pos, float[] dst, int off, int count) {
+            for (int i = 0, p = pos; i < count; i++, p += 3) {
+                int v = (src[p] & 0xFF) | (src[p + 1] & 0xFF) << 8 | src[p + 2] << 16;  // sign-extended
+                dst[off + i] = v * (1f / 8388608);
+            }
+        }
+
+        void encode(float[] src, int off, int count, byte[] dst, int pos) {
+            for (int i = 0, p = pos; i < count; i++, p += 3) {
+                int v = clip(round(src[off + i] * 8388608f), 8388607);
+                dst[p] = (byte) v;
+                dst[p + 1] = (byte) (v >>> 8);
+                dst[p + 2] = (byte) (v >>> 16);
+            }
+        }
+    }
+
+    private static final class Pcm32 extends SampleCodec {
+        public int getBytesPerSample() {
+            return 4;
+        }
+
+        void decode(byte[] src, int pos, float[] dst, int off, int count) {
+            for (int i = 0; i < count; i++) {
+                dst[off + i] = (int) INT_LE.get(src, pos + 4 * i) * (1f / 2147483648f);
+            }
+        }
+
+        void encode(float[] src, int off, int count, byte[] dst, int pos) {
+            for (int i = 0; i < count; i++) {
+                // in double, since a float can't hold the full 32-bit range; the cast saturates, so needs no clip
+                INT_LE.set(dst, pos + 4 * i, (int) Math.floor(src[off + i] * 2147483648.0 + 0.5));
+            }
+        }
+    }
+
+    /** 32-bit IEEE float, which is already normalized, and so is only reordered */
+    private static final class Float32 extends SampleCodec {
+        public int getBytesPerSample() {
+            return 4;
+        }
+
+        void decode(byte[] src, int pos, float[] dst, int off, int count) {
+            for (int i = 0; i < count; i++) {
+                dst[off + i] = (float) FLOAT_LE.get(src, pos + 4 * i);
+            }
+        }
+
+        void encode(float[] src, int off, int count, byte[] dst, int pos) {
+            for (int i = 0; i < count; i++) {
+                FLOAT_LE.set(dst, pos + 4 * i, src[off + i]);
+            }
+        }
+    }
+
+    /** Round half up, through <code>Math.floor()</code>, which unlike <code>Math.round()</code> is a single instruction */
+    private static int round(float v) {
+        return (int) Math.floor(v + 0.5f);
+    }
+
+    /** Clip a rounded sample to the range of a signed integer whose maximum is <code>max</code> */
+    private static int clip(int v, int max) {
+        return Math.max(-max - 1, Math.min(max, v));
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -11,6 +12,11 @@ import java.io.OutputStream;
  */
 public class WaveDataOutputStream extends DataOutputStream {
 
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    /** Reusable buffer for encoding sample data */
+    private byte[] scratch;
+
     /**
      * Creates a new data output stream to write data to the specified
      * underlying output stream. The counter <code>written</code> is
@@ -52,11 +58,46 @@ public class WaveDataOutputStream extends DataOutputStream {
     }
 
     public void writeWavBytes(short[] audioData) throws IOException {
-        for (short v : audioData) {
-            out.write((v >>> 0) & 0xFF);
-            out.write((v >>> 8) & 0xFF);
+        writeWavBytes(audioData, 0, audioData.length);
+    }
+
+    /**
+     * Write a range of 16-bit samples as little-endian bytes. Samples are encoded in blocks
+     * so that the underlying stream sees a few large writes rather than one per byte.
+     */
+    public void writeWavBytes(short[] audioData, int off, int len) throws IOException {
+        if (scratch == null) scratch = new byte[SCRATCH_SIZE];
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(end - off, scratch.length / 2);
+            for (int i = 0, j = 0; i < n; i++, j += 2) {
+                short v = audioData[off + i];
+                scratch[j] = (byte) (v >>> 0);
+                scratch[j + 1] = (byte) (v >>> 8);
+            }
+            out.write(scratch, 0, 2 * n);
+            off += n;
+        }
+        incCount(2 * len);
+    }
+
+    /**
+     * Write a range of normalized samples, encoded by the specified codec. Samples are
+     * encoded in blocks so that the underlying stream sees a few large writes.
+     */
+    public void writeWavSamples(SampleCodec codec, float[] audioData, int off, int len) throws IOException {
+        if (scratch == null) scratch = new byte[SCRATCH_SIZE];
+        int width = codec.getBytesPerSample();
+        ByteBuffer buf = ByteBuffer.wrap(scratch);
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(end - off, scratch.length / width);
+            buf.clear();
+            codec.encode(audioData, off, n, buf);
+            out.write(scratch, 0, n * width);
+            off += n;
         }
-        incCount(2 * audioData.length);
+        incCount(width * len);
     }
 
 }
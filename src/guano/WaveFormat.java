@@ -0,0 +1,196 @@
+package guano;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * The audio format of a .WAV file, as described by its <code>fmt_</code> chunk.
+ *
+ * Integer PCM of 8, 16, 24, or 32 bits and 32-bit IEEE float are understood, in either the
+ * plain or the <code>WAVE_FORMAT_EXTENSIBLE</code> form of the chunk. For the extensible form,
+ * <code>getEncoding()</code> is the sub-format, eg. <code>WAVE_FORMAT_PCM</code>, while
+ * <code>getAudioFormat()</code> remains the chunk's raw format tag.
+ */
+public class WaveFormat {
+
+    /** Integer PCM audio format */
+    public static final int WAVE_FORMAT_PCM = 1;
+
+    /** IEEE floating point audio format */
+    public static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+
+    /** Extensible format, whose actual encoding is given by a sub-format GUID */
+    public static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /** The KSDATAFORMAT_SUBTYPE GUID, less its leading 16-bit format code */
+    private static final byte[] SUBFORMAT_GUID_SUFFIX = {
+            0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71
+    };
+
+    private final int audioFormat;
+    private final int channels;
+    private final int sampleRate;  // Hz
+    private final int blockAlign;  // bytes per frame
+    private final int bitsPerSample;
+    private final int encoding;  // audioFormat, or the sub-format of an extensible format
+    private final int validBitsPerSample;
+    private final int channelMask;
+
+    public WaveFormat(int audioFormat, int channels, int sampleRate, int blockAlign, int bitsPerSample) {
+        this(audioFormat, channels, sampleRate, blockAlign, bitsPerSample, audioFormat, bitsPerSample, 0);
+    }
+
+    /**
+     * @param encoding the sub-format of an extensible format, otherwise the same as <code>audioFormat</code>
+     * @param validBitsPerSample number of significant bits within each sample's container
+     * @param channelMask speaker position of each channel, or 0 for none, eg. for a microphone array
+     */
+    public WaveFormat(int audioFormat, int channels, int sampleRate, int blockAlign, int bitsPerSample,
+                      int encoding, int validBitsPerSample, int channelMask) {
+        this.audioFormat = audioFormat;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.blockAlign = blockAlign;
+        this.bitsPerSample = bitsPerSample;
+        this.encoding = encoding;
+        this.validBitsPerSample = validBitsPerSample;
+        this.channelMask = channelMask;
+    }
+
+    /**
+     * Describe integer PCM audio. The extensible form is used for more than two channels or
+     * more than 16 bits, as the format's specification requires.
+     * @param channels
+     * @param sampleRate Hz
+     * @param bitsPerSample 8, 16, 24, or 32
+     */
+    public static WaveFormat pcm(int channels, int sampleRate, int bitsPerSample) {
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32) {
+            throw new IllegalArgumentException("Unsupported PCM sample width: " + bitsPerSample);
+        }
+        return create(WAVE_FORMAT_PCM, channels, sampleRate, bitsPerSample);
+    }
+
+    /**
+     * Describe 32-bit IEEE float audio. The extensible form is used for more than two channels.
+     * @param channels
+     * @param sampleRate Hz
+     */
+    public static WaveFormat ieeeFloat(int channels, int sampleRate) {
+        return create(WAVE_FORMAT_IEEE_FLOAT, channels, sampleRate, 32);
+    }
+
+    private static WaveFormat create(int encoding, int channels, int sampleRate, int bitsPerSample) {
+        if (channels < 1 || channels > 0xFFFF) throw new IllegalArgumentException("Unsupported channel count: " + channels);
+        boolean extensible = channels > 2 || (encoding == WAVE_FORMAT_PCM && bitsPerSample > 16);
+        return new WaveFormat(extensible ? WAVE_FORMAT_EXTENSIBLE : encoding, channels, sampleRate,
+                channels * bitsPerSample / 8, bitsPerSample, encoding, bitsPerSample, 0);
+    }
+
+    /**
+     * Parse the contents of a <code>fmt_</code> chunk.
+     * @param fmtChunk
+     * @return
+     * @throws IOException if the chunk is missing or malformed
+     */
+    public static WaveFormat parse(byte[] fmtChunk) throws IOException {
+        if (fmtChunk == null) throw new IOException("fmt chunk not found");
+        if (fmtChunk.length < 16) throw new IOException("fmt chunk too short");
+        ByteBuffer buf = ByteBuffer.wrap(fmtChunk).order(ByteOrder.LITTLE_ENDIAN);
+        int audioFormat = buf.getShort(0) & 0xFFFF;
+        int channels = buf.getShort(2) & 0xFFFF;
+        int sampleRate = buf.getInt(4);
+        int blockAlign = buf.getShort(12) & 0xFFFF;
+        int bitsPerSample = buf.getShort(14) & 0xFFFF;
+        if (channels == 0 || blockAlign == 0) throw new IOException("fmt chunk is malformed");
+        if (audioFormat != WAVE_FORMAT_EXTENSIBLE) {
+            return new WaveFormat(audioFormat, channels, sampleRate, blockAlign, bitsPerSample);
+        }
+        if (fmtChunk.length < 40) throw new IOException("Extensible fmt chunk too short");
+        int validBitsPerSample = buf.getShort(18) & 0xFFFF;
+        int channelMask = buf.getInt(20);
+        int encoding = buf.getShort(24) & 0xFFFF;
+        return new WaveFormat(audioFormat, channels, sampleRate, blockAlign, bitsPerSample,
+                encoding, validBitsPerSample != 0 ? validBitsPerSample : bitsPerSample, channelMask);
+    }
+
+    /**
+     * Render the contents of a <code>fmt_</code> chunk describing this format: 16 bytes for
+     * integer PCM, 18 for other plain formats, or 40 for the extensible form.
+     */
+    public byte[] toBytes() {
+        boolean extensible = audioFormat == WAVE_FORMAT_EXTENSIBLE;
+        int size = extensible ? 40 : audioFormat == WAVE_FORMAT_PCM ? 16 : 18;
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) audioFormat);
+        buf.putShort((short) channels);
+        buf.putInt(sampleRate);
+        buf.putInt(sampleRate * blockAlign);  // byte rate
+        buf.putShort((short) blockAlign);
+        buf.putShort((short) bitsPerSample);
+        if (size > 16) buf.putShort((short) (size - 18));  // extension size
+        if (extensible) {
+            buf.putShort((short) validBitsPerSample);
+            buf.putInt(channelMask);
+            buf.putShort((short) encoding);
+            buf.put(SUBFORMAT_GUID_SUFFIX);
+        }
+        return buf.array();
+    }
+
+    /** @return the chunk's raw format tag, which may be <code>WAVE_FORMAT_EXTENSIBLE</code> */
+    public int getAudioFormat() {
+        return audioFormat;
+    }
+
+    /** @return the actual sample encoding, eg. <code>WAVE_FORMAT_PCM</code> or <code>WAVE_FORMAT_IEEE_FLOAT</code> */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /** @return samplerate in Hz */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** @return size of a single frame (one sample for every channel) in bytes */
+    public int getBlockAlign() {
+        return blockAlign;
+    }
+
+    /** @return size of each sample's container in bits */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /** @return number of significant bits within each sample's container */
+    public int getValidBitsPerSample() {
+        return validBitsPerSample;
+    }
+
+    /** @return speaker position of each channel, or 0 if unassigned */
+    public int getChannelMask() {
+        return channelMask;
+    }
+
+    /** @return <code>true</code> if this is 16-bit integer PCM */
+    public boolean isPcm16() {
+        return encoding == WAVE_FORMAT_PCM && bitsPerSample == 16 && blockAlign == 2 * channels;
+    }
+
+    /** @return <code>true</code> if this is 32-bit IEEE float */
+    public boolean isFloat() {
+        return encoding == WAVE_FORMAT_IEEE_FLOAT && bitsPerSample == 32;
+    }
+
+    public String toString() {
+        return String.format("format %d, %d channels, %d Hz, %d bits", encoding, channels, sampleRate, bitsPerSample);
+    }
+
+}
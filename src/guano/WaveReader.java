@@ -1,10 +1,11 @@
 package guano;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.*;
 
 
 /**
@@ -12,9 +13,61 @@ import java.util.Map;
  */
 public class WaveReader {
 
+    public static final String FMT_CHUNK_ID = "fmt ";
+    public static final String DATA_CHUNK_ID = "data";
+    public static final String DS64_CHUNK_ID = "ds64";
+
+    /** 32-bit RIFF and chunk size placeholder, meaning the actual size is in the <code>ds64</code> chunk */
+    static final long RF64_SIZE_PLACEHOLDER = 0xFFFFFFFFL;
+
+    /** The chunks needed to interpret a file's metadata, without its audio data */
+    public static final Collection<String> METADATA_CHUNK_IDS =
+            Collections.unmodifiableList(Arrays.asList(FMT_CHUNK_ID, GuanoReader.GUANO_CHUNK_ID));
+
+    /**
+     * Location of a single RIFF chunk within a file.
+     */
+    static class ChunkHeader {
+        final String id;
+        final long offset;  // of the chunk header
+        final long size;  // of the chunk data, excluding any pad byte
+
+        ChunkHeader(String id, long offset, long size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /** @return absolute file offset of the chunk's data */
+        long dataOffset() {
+            return offset + 8;
+        }
+
+        /** @return absolute file offset just past the end of the chunk, including any pad byte */
+        long end() {
+            return offset + 8 + size + (size % 2);
+        }
+
+        public String toString() {
+            return String.format("%s[%d]@%d", id, size, offset);
+        }
+    }
+
     Collection<String> chunkNames = new ArrayList<>();
     Map<String, byte[]> chunks = new HashMap<>();
 
+    /** All chunk headers, in file order */
+    List<ChunkHeader> chunkHeaders = new ArrayList<>();
+
+    /** Mapping of chunk name to the absolute file offset of its data */
+    Map<String, Long> chunkOffsets = new HashMap<>();
+
+    /** Mapping of chunk name to the size of its data, in bytes */
+    Map<String, Long> chunkSizes = new HashMap<>();
+
+    /** Whether this is an RF64 (or BW64) file, whose large sizes are stored in its <code>ds64</code> chunk */
+    boolean rf64 = false;
+
     public WaveReader(String filename) throws IOException {
         this(new File(filename));
     }
@@ -24,32 +77,167 @@ public class WaveReader {
     }
 
     public WaveReader(FileInputStream fis) throws IOException {
-        try (WaveDataInputStream dis = new WaveDataInputStream(fis)) {
-
-            // RIFF
-            String id = dis.readString(4);
-            int size = dis.readWavInt();
-            //System.out.println(String.format("%s %d (%.1fmb)", id, size, (float)size/1024/1024));
-            if (!id.equals("RIFF")) throw new IOException("RIFF chunk identifier not found");
-
-            // WAVE
-            id = dis.readString(4);
-            //System.out.println(id);
-            if (!id.equals("WAVE")) throw new IOException("WAVE RIFF type identifier not found");
-
-            // individual subchunks...
-            WaveDataInputStream.Chunk chunk;
-            while (true) {
-                try {
-                    chunk = dis.readChunk();
-                } catch (EOFException e) {
-                    break;
-                }
-                //System.out.println(chunk);
-                chunkNames.add(chunk.id);
-                chunks.put(chunk.id, chunk.data);
+        this(fis, null);
+    }
+
+    /**
+     * Read only the specified chunks of a file, seeking past all others. This is far cheaper
+     * than reading the entire file when only metadata is needed, since the (large) <code>data</code>
+     * chunk is never read. All chunk names, offsets, and sizes are still available.
+     * @param file
+     * @param chunkIds names of the chunks to load, eg. {@link #METADATA_CHUNK_IDS}, or <code>null</code> for all
+     * @throws IOException
+     */
+    public WaveReader(File file, Collection<String> chunkIds) throws IOException {
+        this(new FileInputStream(file), chunkIds);
+    }
+
+    /**
+     * Read only the specified chunks of a file, seeking past all others.
+     * @param fis
+     * @param chunkIds names of the chunks to load, eg. {@link #METADATA_CHUNK_IDS}, or <code>null</code> for all
+     * @throws IOException
+     */
+    public WaveReader(FileInputStream fis, Collection<String> chunkIds) throws IOException {
+        try (FileChannel channel = fis.getChannel()) {
+            readChunks(channel, chunkIds);
+        }
+    }
+
+    /**
+     * Read only the specified chunks from a seekable channel, which is left open.
+     * @param channel a channel positioned anywhere; reading always begins at offset 0
+     * @param chunkIds names of the chunks to load, or <code>null</code> for all
+     * @throws IOException
+     */
+    public WaveReader(SeekableByteChannel channel, Collection<String> chunkIds) throws IOException {
+        readChunks(channel, chunkIds);
+    }
+
+    /**
+     * Read only the specified chunks from a stream, which is left open. Unwanted chunks are skipped
+     * with <code>InputStream.skip()</code>, and never buffered in memory. The stream must be positioned
+     * at the start of the file, and is left positioned somewhere after the last chunk read.
+     * @param in
+     * @param chunkIds names of the chunks to load, or <code>null</code> for all
+     * @throws IOException
+     */
+    public WaveReader(InputStream in, Collection<String> chunkIds) throws IOException {
+        this(new InputStreamChannel(in), chunkIds);
+    }
+
+    /**
+     * Walk the RIFF chunk headers, loading only the requested chunks and positioning past all others.
+     * RF64 files are supported, in which case 64-bit chunk sizes are taken from the <code>ds64</code> chunk.
+     */
+    private void readChunks(SeekableByteChannel channel, Collection<String> chunkIds) throws IOException {
+        long start = System.nanoTime();
+        long dataNanos = 0;
+        long bytesRead = 12, bytesSkipped = 0;
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        long length = channel.size();
+
+        // RIFF (or RF64), WAVE
+        channel.position(0);
+        if (!readFully(channel, header)) throw new IOException("RIFF chunk identifier not found");
+        rf64 = parseRiffHeader(header);
+
+        // individual subchunks...
+        Map<String, Long> ds64Sizes = Collections.emptyMap();
+        long offset = 12;
+        while (offset + 8 <= length) {
+            header.clear().limit(8);
+            channel.position(offset);
+            if (!readFully(channel, header)) break;
+            bytesRead += 8;
+            ChunkHeader chunk = parseChunkHeader(header, offset, ds64Sizes);
+            String id = chunk.id;
+            long size = chunk.size;
+            if (offset + 8 + size > length) break;  // truncated chunk
+
+            chunkNames.add(id);
+            chunkOffsets.put(id, chunk.dataOffset());
+            chunkSizes.put(id, size);
+            chunkHeaders.add(chunk);
+            if (chunkIds == null || chunkIds.contains(id) || (rf64 && id.equals(DS64_CHUNK_ID))) {
+                if (size > Integer.MAX_VALUE - 8) throw new IOException("Chunk too large to load: " + id);
+                byte[] data = new byte[(int) size];
+                long dataStart = System.nanoTime();
+                boolean complete = readFully(channel, ByteBuffer.wrap(data));
+                dataNanos += System.nanoTime() - dataStart;
+                if (!complete) break;
+                bytesRead += size;
+                if (rf64 && id.equals(DS64_CHUNK_ID)) ds64Sizes = parseDs64(data);
+                if (chunkIds == null || chunkIds.contains(id)) chunks.put(id, data);
+            } else {
+                bytesSkipped += size;
             }
+            offset = chunk.end();  // chunks are word-aligned
+        }
+
+        GuanoMetrics.recordRead(chunkHeaders.size(), bytesRead, bytesSkipped, System.nanoTime() - start - dataNanos, dataNanos);
+    }
+
+    /**
+     * Validate the 12-byte RIFF header which begins every file.
+     * @return <code>true</code> if this is an RF64 (or BW64) file
+     * @throws IOException if this is not a RIFF WAVE file
+     */
+    static boolean parseRiffHeader(ByteBuffer header) throws IOException {
+        String riffId = readId(header, 0);
+        boolean rf64 = riffId.equals("RF64") || riffId.equals("BW64");
+        if (!riffId.equals("RIFF") && !rf64) throw new IOException("RIFF chunk identifier not found");
+        if (!readId(header, 8).equals("WAVE")) throw new IOException("WAVE RIFF type identifier not found");
+        return rf64;
+    }
+
+    /**
+     * Parse an 8-byte chunk header. A size placeholder is replaced by the chunk's actual size, if
+     * the <code>ds64</code> chunk's table has one.
+     * @param header the header bytes, from index 0
+     * @param offset absolute file offset of the header
+     * @param ds64Sizes actual chunk sizes from <code>parseDs64()</code>, or empty if not an RF64 file
+     */
+    static ChunkHeader parseChunkHeader(ByteBuffer header, long offset, Map<String, Long> ds64Sizes) {
+        String id = readId(header, 0);
+        long size = header.order(ByteOrder.LITTLE_ENDIAN).getInt(4) & 0xFFFFFFFFL;
+        if (size == RF64_SIZE_PLACEHOLDER && ds64Sizes.containsKey(id)) {
+            size = ds64Sizes.get(id);
         }
+        return new ChunkHeader(id, offset, size);
+    }
+
+    /**
+     * Parse the 64-bit chunk sizes from a <code>ds64</code> chunk.
+     * @return mapping of chunk name to actual size
+     */
+    static Map<String, Long> parseDs64(byte[] ds64) throws IOException {
+        if (ds64.length < 28) throw new IOException("ds64 chunk too short");
+        ByteBuffer buf = ByteBuffer.wrap(ds64).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Long> sizes = new HashMap<>();
+        sizes.put(DATA_CHUNK_ID, buf.getLong(8));
+        int tableLength = buf.getInt(24);
+        for (int i = 0, pos = 28; i < tableLength && pos + 12 <= ds64.length; i++, pos += 12) {
+            sizes.put(readId(buf, pos), buf.getLong(pos + 4));
+        }
+        return sizes;
+    }
+
+    /** Fill the buffer from the channel's current position, returning false on premature EOF */
+    static boolean readFully(SeekableByteChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) return false;
+        }
+        return true;
+    }
+
+    /** Decode a four-character RIFF identifier */
+    static String readId(ByteBuffer buf, int index) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buf.get(index + i);
+        }
+        return new String(bytes);
     }
 
     public Collection<String> getChunkNames() {
@@ -60,6 +248,9 @@ public class WaveReader {
         return chunkNames.contains(name);
     }
 
+    /**
+     * @return the chunk's data, or <code>null</code> if the chunk is absent or was not loaded
+     */
     public byte[] getChunk(String name) {
         return chunks.get(name);
     }
@@ -68,6 +259,32 @@ public class WaveReader {
         return chunks;
     }
 
+    /**
+     * @return absolute file offset of the chunk's data, or -1 if the chunk is absent
+     */
+    public long getChunkOffset(String name) {
+        Long offset = chunkOffsets.get(name);
+        return offset != null ? offset : -1;
+    }
+
+    /**
+     * @return size of the chunk's data in bytes, or -1 if the chunk is absent
+     */
+    public long getChunkSize(String name) {
+        Long size = chunkSizes.get(name);
+        return size != null ? size : -1;
+    }
+
+    /** @return <code>true</code> if this is an RF64 file, which may exceed 4GB */
+    public boolean isRf64() {
+        return rf64;
+    }
+
+    /** @return all chunk headers, in file order */
+    List<ChunkHeader> getChunkHeaders() {
+        return chunkHeaders;
+    }
+
     public static void main(String[] args) {
         if (args.length < 1) {
             System.err.println("usage: java guano.WaveReader WAVFILE");
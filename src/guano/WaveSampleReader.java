@@ -0,0 +1,235 @@
+package guano;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+
+/**
+ * Random access to the PCM samples of a .WAV file.
+ *
+ * Only the chunk headers and <code>fmt_</code> chunk are read when the file is opened.
+ * Each call to <code>readSamples()</code> then performs a single positional read of just
+ * the requested range, so jumping to a point of interest in a long recording costs only
+ * as much I/O as the samples returned. Reads do not share any mutable state, so a single
+ * instance may be used from multiple threads. Multi-channel samples are returned interleaved,
+ * except by <code>readPlanar()</code>.
+ *
+ * Any format supported by <code>SampleCodec</code> may be read, including 24-bit, 32-bit, and float
+ * audio, as normalized <code>float</code> samples. The <code>short</code> methods return 16-bit samples
+ * from any format, which for wider formats means converting them, with a loss of precision.
+ */
+public class WaveSampleReader implements Closeable {
+
+    private final FileChannel channel;
+    private final WaveFormat format;
+    private final SampleCodec codec;
+    private final long dataOffset;
+    private final long frameCount;
+
+    public WaveSampleReader(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    public WaveSampleReader(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    public WaveSampleReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            WaveReader reader = new WaveReader(channel, Collections.singleton(WaveReader.FMT_CHUNK_ID));
+            format = WaveFormat.parse(reader.getChunk(WaveReader.FMT_CHUNK_ID));
+            codec = SampleCodec.forFormat(format);
+            if (!reader.hasChunk(WaveReader.DATA_CHUNK_ID)) throw new IOException("data chunk not found");
+            dataOffset = reader.getChunkOffset(WaveReader.DATA_CHUNK_ID);
+            frameCount = reader.getChunkSize(WaveReader.DATA_CHUNK_ID) / format.getBlockAlign();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public WaveFormat getFormat() {
+        return format;
+    }
+
+    /** @return total number of frames (one sample for every channel) in the file */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** @return length of the recording in seconds */
+    public double getDuration() {
+        return (double) frameCount / format.getSampleRate();
+    }
+
+    /**
+     * Read a range of samples specified in seconds. The range is clipped to the end of the recording,
+     * so a range starting past the end returns no samples.
+     * @param startSeconds offset of the first sample from the start of the recording
+     * @param lengthSeconds duration to read
+     * @return interleaved samples
+     * @throws IllegalArgumentException if the start or length is negative
+     * @throws IOException
+     */
+    public short[] readSamples(double startSeconds, double lengthSeconds) throws IOException {
+        if (!(startSeconds >= 0) || !(lengthSeconds >= 0)) {  // also rejects NaN
+            throw new IllegalArgumentException(String.format("invalid range: %s seconds from %s", lengthSeconds, startSeconds));
+        }
+        long startFrame = Math.min(Math.round(startSeconds * format.getSampleRate()), frameCount);
+        long frames = Math.round(lengthSeconds * format.getSampleRate());
+        return readSamples(startFrame, (int) Math.min(frames, Integer.MAX_VALUE / format.getChannels()));
+    }
+
+    /**
+     * Read a range of frames. The range is clipped to the end of the recording.
+     * @param startFrame index of the first frame to read
+     * @param frames number of frames to read
+     * @return interleaved samples
+     * @throws IndexOutOfBoundsException if the start is outside the recording
+     * @throws IllegalArgumentException if the number of frames is negative
+     * @throws IOException
+     */
+    public short[] readSamples(long startFrame, int frames) throws IOException {
+        checkRange(startFrame, frames);
+        frames = (int) Math.min(frames, frameCount - startFrame);
+        short[] samples = new short[frames * format.getChannels()];
+        read(ShortBuffer.wrap(samples), startFrame);
+        return samples;
+    }
+
+    /**
+     * Read frames into a buffer, filling as many whole frames as fit in its remaining space.
+     * The range is clipped to the end of the recording.
+     * @param dst buffer to receive interleaved samples
+     * @param startFrame index of the first frame to read
+     * @return number of frames read
+     * @throws IndexOutOfBoundsException if the start is outside the recording
+     * @throws IOException
+     */
+    public int read(ShortBuffer dst, long startFrame) throws IOException {
+        checkFrame(startFrame);
+        int frames = (int) Math.min(dst.remaining() / format.getChannels(), frameCount - startFrame);
+        if (!format.isPcm16()) {
+            float[] samples = new float[frames * format.getChannels()];
+            read(samples, 0, startFrame, frames);
+            for (float sample : samples) {
+                dst.put((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * 32768f))));
+            }
+            return frames;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(frames * format.getBlockAlign());
+        readFully(bytes, startFrame);
+        dst.put(bytes.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+        return frames;
+    }
+
+    /**
+     * Read a range of frames as normalized samples. The range is clipped to the end of the recording.
+     * @param startFrame index of the first frame to read
+     * @param frames number of frames to read
+     * @return interleaved samples in the range [-1.0, 1.0)
+     * @throws IndexOutOfBoundsException if the start is outside the recording
+     * @throws IllegalArgumentException if the number of frames is negative
+     * @throws IOException
+     */
+    public float[] readFloats(long startFrame, int frames) throws IOException {
+        checkRange(startFrame, frames);
+        frames = (int) Math.min(frames, frameCount - startFrame);
+        float[] samples = new float[frames * format.getChannels()];
+        read(samples, 0, startFrame, frames);
+        return samples;
+    }
+
+    /**
+     * Read frames as normalized samples into an array. The range is clipped to the end of the recording.
+     * @param dst array to receive interleaved samples in the range [-1.0, 1.0)
+     * @param off index in <code>dst</code> of the first sample
+     * @param startFrame index of the first frame to read
+     * @param frames maximum number of frames to read
+     * @return number of frames read
+     * @throws IndexOutOfBoundsException if the start is outside the recording
+     * @throws IllegalArgumentException if the number of frames is negative
+     * @throws IOException
+     */
+    public int read(float[] dst, int off, long startFrame, int frames) throws IOException {
+        checkRange(startFrame, frames);
+        frames = (int) Math.min(frames, frameCount - startFrame);
+        ByteBuffer bytes = ByteBuffer.allocate(frames * format.getBlockAlign());
+        readFully(bytes, startFrame);
+        codec.decode(bytes, dst, off, frames * format.getChannels());
+        return frames;
+    }
+
+    /**
+     * Read a range of frames as normalized samples, with a separate array for each channel.
+     * The range is clipped to the end of the recording.
+     * @param startFrame index of the first frame to read
+     * @param frames number of frames to read
+     * @return one array of samples in the range [-1.0, 1.0) per channel
+     * @throws IndexOutOfBoundsException if the start is outside the recording
+     * @throws IllegalArgumentException if the number of frames is negative
+     * @throws IOException
+     */
+    public float[][] readPlanar(long startFrame, int frames) throws IOException {
+        float[] interleaved = readFloats(startFrame, frames);
+        float[][] planar = new float[format.getChannels()][interleaved.length / format.getChannels()];
+        SampleCodec.deinterleave(interleaved, 0, planar[0].length, planar, 0);
+        return planar;
+    }
+
+    private void checkFrame(long frame) {
+        if (frame < 0 || frame > frameCount) {
+            throw new IndexOutOfBoundsException(String.format("frame %d outside recording of %d frames", frame, frameCount));
+        }
+    }
+
+    private void checkRange(long startFrame, int frames) {
+        checkFrame(startFrame);
+        if (frames < 0) throw new IllegalArgumentException("negative number of frames: " + frames);
+    }
+
+    /** Positional read which fills the buffer, then flips it for reading */
+    private void readFully(ByteBuffer bytes, long startFrame) throws IOException {
+        long position = dataOffset + startFrame * format.getBlockAlign();
+        while (bytes.hasRemaining()) {
+            int n = channel.read(bytes, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+        }
+        bytes.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("usage: java guano.WaveSampleReader WAVFILE START_SECONDS LENGTH_SECONDS");
+            System.exit(2);
+        }
+
+        try (WaveSampleReader reader = new WaveSampleReader(args[0])) {
+            short[] samples = reader.readSamples(Double.parseDouble(args[1]), Double.parseDouble(args[2]));
+            int peak = 0;
+            for (short sample : samples) {
+                peak = Math.max(peak, Math.abs(sample));
+            }
+            System.out.println(String.format("%s: read %d samples, peak amplitude %d", reader.getFormat(), samples.length, peak));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
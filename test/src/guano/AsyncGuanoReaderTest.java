@@ -0,0 +1,79 @@
+package guano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+public class AsyncGuanoReaderTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("guano-async-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** As after an interrupted <code>GuanoEditor</code> save, a stale <code>guan</code> chunk precedes the current one */
+    @Test
+    public void readsLastGuanChunk() throws Exception {
+        Path path = dir.resolve("twice.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setString(GuanoField.NOTE, "stale");
+        writer.setAudioData(250000, new short[1000]);
+        writer.write();
+
+        byte[] current = "GUANO|Version: 1.0\nTimestamp: 2020-01-02T03:04:05\nNote: current\n".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer chunk = ByteBuffer.allocate(8 + current.length + current.length % 2).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(GuanoReader.GUANO_CHUNK_ID.getBytes(StandardCharsets.US_ASCII)).putInt(current.length).put(current);
+        byte[] original = Files.readAllBytes(path);
+        byte[] bytes = Arrays.copyOf(original, original.length + chunk.capacity());
+        System.arraycopy(chunk.array(), 0, bytes, original.length, chunk.capacity());
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, bytes.length - 8);  // RIFF size
+        Files.write(path, bytes);
+
+        assertEquals("current", new GuanoReader(path.toFile()).getString(GuanoField.NOTE));
+        try (AsyncGuanoReader reader = new AsyncGuanoReader(2, 4)) {
+            assertEquals("current", reader.read(path).get().getString(GuanoField.NOTE));
+        }
+    }
+
+    @Test
+    public void readsFileWithoutGuanChunk() throws Exception {
+        Path path = dir.resolve("plain.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setAudioData(250000, new short[1000]);
+        writer.write();
+        byte[] bytes = Files.readAllBytes(path);
+        int guan = (int) new WaveReader(path.toFile(), WaveReader.METADATA_CHUNK_IDS).getChunkOffset(GuanoReader.GUANO_CHUNK_ID) - 8;
+        bytes = Arrays.copyOf(bytes, guan);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, bytes.length - 8);
+        Files.write(path, bytes);
+
+        try (AsyncGuanoReader reader = new AsyncGuanoReader(2, 4)) {
+            assertTrue(reader.read(path).get().getNamespaces().isEmpty());
+            assertNotNull(reader.readChunk(path, WaveReader.FMT_CHUNK_ID).get());
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package guano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+
+
+public class GuanoCatalogTest {
+
+    private Path dir;
+    private Path locked;  // restored before cleaning up
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("guano-catalog-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (locked != null) Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** A directory which can't be listed is skipped, and its existing entries kept, while the rest of the tree is updated */
+    @Test
+    public void updateSurvivesUnreadableDirectory() throws IOException {
+        Path root = Files.createDirectories(dir.resolve("recordings"));
+        locked = Files.createDirectories(root.resolve("locked"));
+        Path open = Files.createDirectories(root.resolve("open"));
+        write(locked.resolve("a.wav"), "1");
+        write(open.resolve("b.wav"), "1");
+        GuanoCatalog catalog = new GuanoCatalog(dir.resolve("catalog.idx"));
+        try (GuanoScanner scanner = new GuanoScanner(2)) {
+            assertEquals(2, catalog.update(root, scanner));
+
+            Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+            assumeFalse("directory permissions aren't enforced for this user", Files.isReadable(locked));
+            write(open.resolve("c.wav"), "2");
+
+            assertEquals(1, catalog.update(root, scanner));
+        }
+        assertEquals(3, catalog.getEntries().size());
+        assertEquals("1", catalog.get(locked.resolve("a.wav")).getString("Note"));
+        assertEquals("2", catalog.get(open.resolve("c.wav")).getString("Note"));
+        assertTrue(catalog.getUnreadable().containsKey(locked.toAbsolutePath().normalize()));
+    }
+
+    private static void write(Path path, String note) throws IOException {
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setString(GuanoField.NOTE, note);
+        writer.setAudioData(250000, new short[100]);
+        writer.write();
+    }
+
+}
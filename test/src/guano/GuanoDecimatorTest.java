@@ -0,0 +1,76 @@
+package guano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+public class GuanoDecimatorTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("guano-decimator-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** An output directory within the source tree, here left over from a previous run, is never decimated again */
+    @Test
+    public void decimateAllSkipsNestedOutputDirectory() throws IOException {
+        Path root = Files.createDirectories(dir.resolve("recordings"));
+        Path output = root.resolve("decimated");
+        write(root.resolve("a.wav"));
+        write(Files.createDirectories(root.resolve("night2")).resolve("b.wav"));
+        write(Files.createDirectories(output).resolve("a.wav"));
+
+        Set<Path> decimated;
+        try (GuanoScanner scanner = new GuanoScanner(2);
+             Stream<GuanoScanner.Result<Long>> results = new GuanoDecimator(4).decimateAll(root, output, scanner)) {
+            decimated = results.map(result -> {
+                assertTrue(String.valueOf(result.getError()), result.isSuccess());
+                assertEquals(Long.valueOf(2500), result.getValue());
+                return root.relativize(result.getPath());
+            }).collect(Collectors.toCollection(TreeSet::new));
+        }
+
+        assertEquals(new TreeSet<>(Arrays.asList(root.relativize(root.resolve("a.wav")),
+                root.relativize(root.resolve("night2/b.wav")))), decimated);
+        assertTrue(Files.exists(output.resolve("night2/b.wav")));
+        assertFalse(Files.exists(output.resolve("decimated")));
+        assertEquals(Integer.valueOf(62500), new GuanoReader(output.resolve("a.wav").toFile()).getInt(GuanoField.SAMPLERATE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decimateAllRejectsOutputDirectoryEqualToSource() throws IOException {
+        try (GuanoScanner scanner = new GuanoScanner(2)) {
+            new GuanoDecimator(4).decimateAll(dir, dir.resolve("x").resolve(".."), scanner).close();
+        }
+    }
+
+    private static void write(Path path) throws IOException {
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setInt(GuanoField.SAMPLERATE, 250000);
+        writer.setAudioData(250000, new short[10000]);
+        writer.write();
+    }
+
+}
@@ -0,0 +1,34 @@
+package guano;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+
+public class GuanoSplitterTest {
+
+    @Test
+    public void frameOffsetOfShortRecording() {
+        assertEquals(Duration.ofMillis(1500), GuanoSplitter.frameOffset(375000, 250000));
+        assertEquals(Duration.ofNanos(2000), GuanoSplitter.frameOffset(1, 500000));
+    }
+
+    /** At 500kHz, the frame index in nanoseconds would overflow a <code>long</code> after about 5.1 hours */
+    @Test
+    public void frameOffsetOfLongRecording() {
+        long frame = 500000L * 6 * 3600 + 250000;  // 6 hours and half a second
+        assertEquals(Duration.ofHours(6).plusMillis(500), GuanoSplitter.frameOffset(frame, 500000));
+        assertEquals("2016-05-01T02:00:00.5", GuanoSplitter.offsetTimestamp("2016-04-30T20:00:00",
+                GuanoSplitter.frameOffset(frame, 500000)));
+    }
+
+    @Test
+    public void offsetTimestampKeepsUtcOffset() {
+        assertEquals("2016-04-30T20:00:01-05:00",
+                GuanoSplitter.offsetTimestamp("2016-04-30T20:00:00-05:00", Duration.ofSeconds(1)));
+        assertNull(GuanoSplitter.offsetTimestamp("not a timestamp", Duration.ofSeconds(1)));
+    }
+
+}
@@ -0,0 +1,175 @@
+package guano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+public class GuanoValidatorTest {
+
+    private static final int SAMPLES = 100000;
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("guano-validator-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A stream which was never finalized, whose audio happens to begin like a chunk header
+     * ("ABCD" with a size past the end of the file), must have its audio adopted, not cut off.
+     */
+    @Test
+    public void repairAdoptsAudioWhichLooksLikeTruncatedChunk() throws IOException {
+        short[] samples = new short[SAMPLES];
+        samples[0] = 0x4241;  // "AB"
+        samples[1] = 0x4443;  // "CD"
+        samples[2] = (short) 0xFFFF;  // chunk size past the end of the file
+        samples[3] = 0x7FFF;
+        for (int i = 4; i < samples.length; i++) {
+            samples[i] = (short) (i * 7);
+        }
+
+        Path unfinished = dir.resolve("unfinished.wav");
+        Path writing = dir.resolve("writing.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(writing.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.startAudioStream(250000);
+        writer.appendSamples(samples, 0, samples.length);
+        Files.copy(writing, unfinished);  // as left by a recorder which lost power before close()
+        writer.close();
+        long unfinishedSize = Files.size(unfinished);
+
+        GuanoValidator.Report report = new GuanoValidator(true).validate(unfinished);
+        assertTrue(report.isRepaired());
+        assertFalse(report.getProblems().contains(GuanoValidator.Problem.TRUNCATED));
+        assertEquals(unfinishedSize, Files.size(unfinished));
+
+        GuanoValidator.Report after = new GuanoValidator(false).validate(unfinished);
+        assertEquals(EnumSet.of(GuanoValidator.Problem.MISSING_GUAN), after.getProblems());
+        try (WaveSampleReader reader = new WaveSampleReader(unfinished)) {
+            assertEquals(SAMPLES, reader.getFrameCount());
+            assertArrayEquals(samples, reader.readSamples(0L, SAMPLES));
+        }
+    }
+
+    /**
+     * A stream which was never finalized, whose audio happens to begin like an intact chunk ("ABCD"
+     * with a size within the file), must have all of its audio adopted, rather than being walked as chunks.
+     */
+    @Test
+    public void repairAdoptsAudioWhichLooksLikeIntactChunk() throws IOException {
+        short[] samples = new short[SAMPLES];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 7);
+        }
+        samples[0] = 0x4241;  // "AB"
+        samples[1] = 0x4443;  // "CD"
+        samples[2] = 100;  // chunk size well within the file
+        samples[3] = 0;
+        samples[4 + 50] = (short) 0x8180;  // followed by an invalid chunk identifier
+        samples[4 + 51] = (short) 0x8382;
+
+        Path unfinished = dir.resolve("unfinished.wav");
+        Path writing = dir.resolve("writing.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(writing.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.startAudioStream(250000);
+        writer.appendSamples(samples, 0, samples.length);
+        Files.copy(writing, unfinished);  // as left by a recorder which lost power before close()
+        writer.close();
+        long unfinishedSize = Files.size(unfinished);
+
+        GuanoValidator.Report report = new GuanoValidator(true).validate(unfinished);
+        assertTrue(report.isRepaired());
+        assertEquals(unfinishedSize, Files.size(unfinished));
+
+        assertEquals(EnumSet.of(GuanoValidator.Problem.MISSING_GUAN), new GuanoValidator(false).validate(unfinished).getProblems());
+        try (WaveSampleReader reader = new WaveSampleReader(unfinished)) {
+            assertEquals(SAMPLES, reader.getFrameCount());
+            assertArrayEquals(samples, reader.readSamples(0L, SAMPLES));
+        }
+    }
+
+    /** An empty data chunk within the RIFF size is intact, and the chunks after it are walked as usual */
+    @Test
+    public void emptyDataChunkIsIntact() throws IOException {
+        Path path = dir.resolve("empty.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setAudioData(250000, new short[0]);
+        writer.write();
+
+        assertTrue(new GuanoValidator(false).validate(path).getProblems().isEmpty());
+    }
+
+    /** A truncated chunk after a correctly sized data chunk and another intact chunk is cut off */
+    @Test
+    public void repairCutsTruncatedChunkAfterIntactData() throws IOException {
+        Path path = dir.resolve("truncated.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setAudioData(250000, new short[1000]);
+        writer.write();
+        long intactSize = Files.size(path);
+
+        ByteBuffer partial = ByteBuffer.allocate(8 + 10).order(ByteOrder.LITTLE_ENDIAN);
+        partial.put("JUNK".getBytes(StandardCharsets.US_ASCII)).putInt(100);  // claims 100 bytes, holds 10
+        Files.write(path, concat(Files.readAllBytes(path), partial.array()));
+
+        GuanoValidator.Report report = new GuanoValidator(true).validate(path);
+        assertTrue(report.getProblems().contains(GuanoValidator.Problem.TRUNCATED));
+        assertTrue(report.isRepaired());
+        assertEquals(intactSize, Files.size(path));
+        assertTrue(new GuanoValidator(false).validate(path).getProblems().isEmpty());
+        assertEquals("2020-01-02T03:04:05", new GuanoReader(path.toFile()).getString(GuanoField.TIMESTAMP));
+    }
+
+    /** A truncated data chunk is shrunk to the whole frames present */
+    @Test
+    public void repairShrinksTruncatedData() throws IOException {
+        Path path = dir.resolve("short.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setAudioData(250000, new short[1000]);
+        writer.write();
+        byte[] bytes = Files.readAllBytes(path);
+        int dataStart = (int) new WaveReader(path.toFile(), WaveReader.METADATA_CHUNK_IDS).getChunkOffset(WaveReader.DATA_CHUNK_ID);
+        Files.write(path, Arrays.copyOf(bytes, dataStart + 501));  // 250 whole samples and a half
+
+        GuanoValidator.Report report = new GuanoValidator(true).validate(path);
+        assertTrue(report.getProblems().contains(GuanoValidator.Problem.TRUNCATED));
+        assertTrue(report.isRepaired());
+        try (WaveSampleReader reader = new WaveSampleReader(path)) {
+            assertEquals(250, reader.getFrameCount());
+        }
+        assertTrue(new GuanoValidator(false).validate(path).isValid());
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+}
@@ -0,0 +1,87 @@
+package guano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+public class GuanoWaveWriterTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("guano-writer-");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void planarAudioRoundTrip() throws IOException {
+        float[][] channels = new float[4][1000];
+        for (int c = 0; c < channels.length; c++) {
+            for (int i = 0; i < channels[c].length; i++) {
+                channels[c][i] = ((i * 37 + c * 1000) % 8192 - 4096) / 8388608f;  // exact in 24 bits
+            }
+        }
+
+        Path path = dir.resolve("planar.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setAudioData(WaveFormat.pcm(4, 384000, 24), channels);
+        writer.write();
+
+        try (WaveSampleReader reader = new WaveSampleReader(path)) {
+            assertEquals(1000, reader.getFrameCount());
+            float[][] planar = reader.readPlanar(0, 1000);
+            for (int c = 0; c < channels.length; c++) {
+                assertArrayEquals(channels[c], planar[c], 0f);
+            }
+        }
+    }
+
+    /** A pipe-delimited fieldname names the same field as its namespace and fieldname given separately */
+    @Test
+    public void pipeDelimitedFieldnameIsNamespaced() throws IOException {
+        Path path = dir.resolve("namespaced.wav");
+        GuanoWaveWriter writer = new GuanoWaveWriter(path.toFile());
+        writer.setString(GuanoField.TIMESTAMP, "2020-01-02T03:04:05");
+        writer.setString("SB|Avg Duration", "4.2");
+        writer.setString("SB", "Avg Duration", "5.3");
+        writer.setString("SB|Max Freq", "80.0");
+        writer.remove("SB", "Max Freq");
+        writer.setAudioData(250000, new short[100]);
+        writer.write();
+
+        GuanoReader reader = new GuanoReader(path.toFile());
+        assertEquals("5.3", reader.getString("SB|Avg Duration"));
+        assertNull(reader.getString("SB", "Max Freq"));
+        String guan = new String(new WaveReader(path.toFile(), WaveReader.METADATA_CHUNK_IDS)
+                .getChunk(GuanoReader.GUANO_CHUNK_ID), StandardCharsets.UTF_8);
+        assertEquals(guan, guan.indexOf("SB|Avg Duration"), guan.lastIndexOf("SB|Avg Duration"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planarAudioRejectsUnequalChannels() throws IOException {
+        GuanoWaveWriter writer = new GuanoWaveWriter(dir.resolve("unequal.wav").toFile());
+        try {
+            writer.setAudioData(WaveFormat.pcm(2, 384000, 24), new float[][] {new float[100], new float[99]});
+        } finally {
+            writer.close();
+        }
+    }
+
+}
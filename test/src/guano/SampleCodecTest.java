@@ -0,0 +1,140 @@
+package guano;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class SampleCodecTest {
+
+    /** More than the codec's block size, so that direct buffers are copied in several blocks */
+    private static final int SAMPLES = 40000;
+
+    @Test
+    public void pcm8RoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(1, 48000, 8));
+    }
+
+    @Test
+    public void pcm16RoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(2, 384000, 16));
+    }
+
+    @Test
+    public void pcm24RoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(4, 384000, 24));
+    }
+
+    @Test
+    public void pcm32RoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(1, 384000, 32));
+    }
+
+    @Test
+    public void floatRoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.ieeeFloat(4, 384000));
+    }
+
+    @Test
+    public void encodesLittleEndian() throws IOException {
+        float[] samples = {0f, 0.5f, -1f};
+        assertArrayEquals(bytes(0x80, 0xC0, 0x00), encode(WaveFormat.pcm(1, 48000, 8), samples));
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x40, 0x00, 0x80), encode(WaveFormat.pcm(1, 48000, 16), samples));
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0x40, 0x00, 0x00, 0x80),
+                encode(WaveFormat.pcm(1, 48000, 24), samples));
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x40, 0x00, 0x00, 0x00, 0x80),
+                encode(WaveFormat.pcm(1, 48000, 32), samples));
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x3F, 0x00, 0x00, 0x80, 0xBF),
+                encode(WaveFormat.ieeeFloat(1, 48000), samples));
+    }
+
+    @Test
+    public void integerEncodingsClip() throws IOException {
+        float[] samples = {1f, 2f, -2f};
+        for (int bits : new int[] {8, 16, 24, 32}) {
+            WaveFormat format = WaveFormat.pcm(1, 48000, bits);
+            float max = 1f - 1f / (1L << (bits - 1));
+            float[] decoded = decode(format, encode(format, samples), samples.length);
+            assertArrayEquals(bits + " bits", new float[] {max, max, -1f}, decoded, 0f);
+        }
+    }
+
+    @Test
+    public void interleaveRoundTrip() {
+        float[][] planar = {{1f, 2f, 3f}, {4f, 5f, 6f}};
+        float[] interleaved = new float[6];
+        SampleCodec.interleave(planar, 0, 3, interleaved, 0);
+        assertArrayEquals(new float[] {1f, 4f, 2f, 5f, 3f, 6f}, interleaved, 0f);
+
+        float[][] split = new float[2][3];
+        SampleCodec.deinterleave(interleaved, 0, 3, split, 0);
+        assertArrayEquals(planar[0], split[0], 0f);
+        assertArrayEquals(planar[1], split[1], 0f);
+    }
+
+    /**
+     * Samples which are exactly representable in the format must survive encoding and decoding
+     * unchanged, through both heap and direct buffers, and the format through its <code>fmt_</code> chunk.
+     */
+    private static void assertRoundTrip(WaveFormat format) throws IOException {
+        SampleCodec codec = SampleCodec.forFormat(WaveFormat.parse(format.toBytes()));
+        assertEquals(format.getBitsPerSample() / 8, codec.getBytesPerSample());
+
+        float[] samples = representable(format, SAMPLES);
+        for (boolean direct : new boolean[] {false, true}) {
+            int width = codec.getBytesPerSample();
+            ByteBuffer buf = direct ? ByteBuffer.allocateDirect(1 + SAMPLES * width) : ByteBuffer.allocate(1 + SAMPLES * width);
+            buf.put((byte) 0x55);  // encoding starts at the buffer's position
+            codec.encode(samples, 0, SAMPLES, buf);
+            assertFalse(buf.hasRemaining());
+
+            buf.flip();
+            assertEquals(0x55, buf.get());
+            float[] decoded = new float[SAMPLES + 1];
+            codec.decode(buf, decoded, 1, SAMPLES);
+            assertFalse(buf.hasRemaining());
+            assertEquals(0f, decoded[0], 0f);
+            assertArrayEquals(format + (direct ? " direct" : " heap"), samples, Arrays.copyOfRange(decoded, 1, SAMPLES + 1), 0f);
+        }
+    }
+
+    /** Random samples in [-1.0, 1.0) which the format encodes exactly, including both extremes */
+    private static float[] representable(WaveFormat format, int count) {
+        Random random = new Random(format.getBitsPerSample());
+        float[] samples = new float[count];
+        int bits = Math.min(format.getBitsPerSample(), 24);  // the precision of a float
+        for (int i = 0; i < count; i++) {
+            samples[i] = format.isFloat() ? random.nextFloat() * 2 - 1 : (random.nextInt(1 << bits) - (1 << (bits - 1))) / (float) (1 << (bits - 1));
+        }
+        samples[0] = -1f;
+        samples[1] = 1f - 1f / (1 << (bits - 1));
+        return samples;
+    }
+
+    private static byte[] encode(WaveFormat format, float[] samples) throws IOException {
+        SampleCodec codec = SampleCodec.forFormat(format);
+        ByteBuffer buf = ByteBuffer.allocate(samples.length * codec.getBytesPerSample());
+        codec.encode(samples, 0, samples.length, buf);
+        return buf.array();
+    }
+
+    private static float[] decode(WaveFormat format, byte[] bytes, int count) throws IOException {
+        float[] samples = new float[count];
+        SampleCodec.forFormat(format).decode(ByteBuffer.wrap(bytes), samples, 0, count);
+        return samples;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+}
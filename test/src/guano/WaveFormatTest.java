@@ -0,0 +1,67 @@
+package guano;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class WaveFormatTest {
+
+    @Test
+    public void plainFormatsRoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(1, 48000, 8), WaveFormat.WAVE_FORMAT_PCM, 16);
+        assertRoundTrip(WaveFormat.pcm(2, 384000, 16), WaveFormat.WAVE_FORMAT_PCM, 16);
+        assertRoundTrip(WaveFormat.ieeeFloat(2, 384000), WaveFormat.WAVE_FORMAT_IEEE_FLOAT, 18);
+    }
+
+    @Test
+    public void extensibleFormatsRoundTrip() throws IOException {
+        assertRoundTrip(WaveFormat.pcm(1, 384000, 24), WaveFormat.WAVE_FORMAT_EXTENSIBLE, 40);
+        assertRoundTrip(WaveFormat.pcm(1, 384000, 32), WaveFormat.WAVE_FORMAT_EXTENSIBLE, 40);
+        assertRoundTrip(WaveFormat.pcm(4, 384000, 16), WaveFormat.WAVE_FORMAT_EXTENSIBLE, 40);
+        assertRoundTrip(WaveFormat.pcm(4, 384000, 24), WaveFormat.WAVE_FORMAT_EXTENSIBLE, 40);
+        assertRoundTrip(WaveFormat.ieeeFloat(4, 384000), WaveFormat.WAVE_FORMAT_EXTENSIBLE, 40);
+    }
+
+    @Test
+    public void channelMaskRoundTrips() throws IOException {
+        WaveFormat format = new WaveFormat(WaveFormat.WAVE_FORMAT_EXTENSIBLE, 2, 96000, 6, 24,
+                WaveFormat.WAVE_FORMAT_PCM, 20, 0x3);
+        WaveFormat parsed = WaveFormat.parse(format.toBytes());
+        assertEquals(20, parsed.getValidBitsPerSample());
+        assertEquals(0x3, parsed.getChannelMask());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsShortChunk() throws IOException {
+        WaveFormat.parse(new byte[14]);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsShortExtensibleChunk() throws IOException {
+        byte[] bytes = WaveFormat.pcm(4, 384000, 24).toBytes();
+        WaveFormat.parse(Arrays.copyOf(bytes, 18));
+    }
+
+    private static void assertRoundTrip(WaveFormat format, int audioFormat, int size) throws IOException {
+        byte[] bytes = format.toBytes();
+        assertEquals(format.toString(), size, bytes.length);
+
+        WaveFormat parsed = WaveFormat.parse(bytes);
+        assertEquals(audioFormat, parsed.getAudioFormat());
+        assertEquals(format.getEncoding(), parsed.getEncoding());
+        assertEquals(format.getChannels(), parsed.getChannels());
+        assertEquals(format.getSampleRate(), parsed.getSampleRate());
+        assertEquals(format.getBlockAlign(), parsed.getBlockAlign());
+        assertEquals(format.getBitsPerSample(), parsed.getBitsPerSample());
+        assertEquals(format.getValidBitsPerSample(), parsed.getValidBitsPerSample());
+        assertEquals(format.getChannelMask(), parsed.getChannelMask());
+        assertEquals(format.isFloat(), parsed.isFloat());
+        assertEquals(format.isPcm16(), parsed.isPcm16());
+        assertArrayEquals(bytes, parsed.toBytes());
+    }
+
+}